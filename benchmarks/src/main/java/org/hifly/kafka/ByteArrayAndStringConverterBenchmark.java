@@ -0,0 +1,103 @@
+package org.hifly.kafka;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.Struct;
+import org.hifly.kafka.smt.ExplodeJsonString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ByteArrayAndStringConverterBenchmark {
+
+    @Param({Payloads.FLAT, Payloads.NESTED, Payloads.WIDE_ARRAY})
+    public String shape;
+
+    @Param({"10", "200"})
+    public int size;
+
+    private ByteArrayAndStringConverter stringConverter;
+    private ByteArrayAndStringConverter jsonConverter;
+
+    private String stringValue;
+    private byte[] bytesValue;
+    private ByteBuffer byteBufferValue;
+    private Schema structSchema;
+    private Struct structValue;
+    private Map<String, Object> mapValue;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        stringConverter = new ByteArrayAndStringConverter();
+        stringConverter.configure(Collections.emptyMap(), false);
+
+        jsonConverter = new ByteArrayAndStringConverter();
+        jsonConverter.configure(Collections.singletonMap(
+                ByteArrayAndStringConverterConfig.STRUCTURED_FORMAT_CONFIG,
+                ByteArrayAndStringConverterConfig.STRUCTURED_FORMAT_JSON), false);
+
+        stringValue = Payloads.json(shape, size);
+        bytesValue = stringValue.getBytes(StandardCharsets.UTF_8);
+        byteBufferValue = ByteBuffer.wrap(bytesValue, 1, bytesValue.length - 1);
+
+        Map<String, Object> struct = ExplodeJsonString.createStruct(stringValue);
+        structSchema = (Schema) struct.get("SCHEMA");
+        structValue = (Struct) struct.get("STRUCT");
+        mapValue = Payloads.flatMap(size);
+    }
+
+    @Benchmark
+    public byte[] string() {
+        return stringConverter.fromConnectData("benchmark-topic", Schema.STRING_SCHEMA, stringValue);
+    }
+
+    @Benchmark
+    public byte[] bytesPassthrough() {
+        return stringConverter.fromConnectData("benchmark-topic", Schema.BYTES_SCHEMA, bytesValue);
+    }
+
+    @Benchmark
+    public byte[] byteBufferSlice() {
+        return stringConverter.fromConnectData("benchmark-topic", Schema.BYTES_SCHEMA, byteBufferValue);
+    }
+
+    @Benchmark
+    public byte[] structToString() {
+        return stringConverter.fromConnectData("benchmark-topic", structSchema, structValue);
+    }
+
+    @Benchmark
+    public byte[] structJson() {
+        return jsonConverter.fromConnectData("benchmark-topic", structSchema, structValue);
+    }
+
+    @Benchmark
+    public byte[] mapJson() {
+        return jsonConverter.fromConnectData("benchmark-topic", null, mapValue);
+    }
+
+    @Benchmark
+    public byte[] structJsonHeader() {
+        return jsonConverter.fromConnectHeader("benchmark-topic", "header", structSchema, structValue);
+    }
+}
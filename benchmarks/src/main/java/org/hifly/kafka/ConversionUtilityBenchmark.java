@@ -0,0 +1,104 @@
+package org.hifly.kafka;
+
+import org.apache.kafka.connect.data.SchemaAndValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call vs batch conversion of RAW keys.
+ * Scores are per key: run with -prof gc to compare allocation per key.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(ConversionUtilityBenchmark.BATCH_SIZE)
+public class ConversionUtilityBenchmark {
+
+    static final int BATCH_SIZE = 1024;
+
+    // share of keys already rendered as HEXTORAW('...')
+    @Param({"0", "10"})
+    public int hexToRawPercent;
+
+    private UUID[] uuids;
+    private byte[][] keys;
+    private byte[] rawBuffer;
+    private String[] hexOut;
+    private SchemaAndValue[] bsonOut;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        uuids = new UUID[BATCH_SIZE];
+        keys = new byte[BATCH_SIZE][];
+        rawBuffer = new byte[BATCH_SIZE * OracleRawCodec.RAW_UUID_SIZE];
+        hexOut = new String[BATCH_SIZE];
+        bsonOut = new SchemaAndValue[BATCH_SIZE];
+
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            uuids[i] = UUID.randomUUID();
+            byte[] raw = OracleRawCodec.uuidToRaw(uuids[i]);
+            if (i % 100 < hexToRawPercent) {
+                keys[i] = ("HEXTORAW('" + OracleRawCodec.toHexString(raw).toLowerCase() + "')").getBytes();
+            } else {
+                keys[i] = raw;
+            }
+        }
+    }
+
+    @Benchmark
+    public void uuidToRawPerCall(Blackhole bh) {
+        for (UUID uuid : uuids) {
+            bh.consume(ConversionUtility.convertToOracleRaw(uuid));
+        }
+    }
+
+    @Benchmark
+    public void uuidToRawBatch(Blackhole bh) {
+        OracleRawCodec.uuidsToRaw(uuids, 0, BATCH_SIZE, rawBuffer, 0);
+        bh.consume(rawBuffer);
+    }
+
+    @Benchmark
+    public void rawToHexPerCall(Blackhole bh) {
+        for (byte[] key : keys) {
+            bh.consume(ConversionUtility.oracleRawToHex(key));
+        }
+    }
+
+    @Benchmark
+    public void rawToHexBatch(Blackhole bh) {
+        ConversionUtility.oracleRawToHex(keys, BATCH_SIZE, hexOut);
+        bh.consume(hexOut);
+    }
+
+    @Benchmark
+    public void rawToBsonPerCall(Blackhole bh) {
+        for (byte[] key : keys) {
+            bh.consume(ConversionUtility.oracleRawToBson(key));
+        }
+    }
+
+    @Benchmark
+    public void rawToBsonBatch(Blackhole bh) {
+        ConversionUtility.oracleRawToBson(keys, BATCH_SIZE, bsonOut);
+        bh.consume(bsonOut);
+    }
+}
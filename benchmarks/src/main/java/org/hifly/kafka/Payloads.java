@@ -0,0 +1,112 @@
+package org.hifly.kafka;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Synthetic payloads shared by the benchmarks.
+ * Shapes: flat (scalar fields), nested (objects inside objects) and wide arrays (arrays of objects).
+ */
+public final class Payloads {
+
+    public static final String FLAT = "flat";
+    public static final String NESTED = "nested";
+    public static final String WIDE_ARRAY = "wideArray";
+
+    private Payloads() {
+    }
+
+    public static String json(String shape, int size) {
+        switch (shape) {
+            case FLAT:
+                return flatJson(size);
+            case NESTED:
+                return nestedJson(size);
+            case WIDE_ARRAY:
+                return wideArrayJson(size);
+            default:
+                throw new IllegalArgumentException("Unknown shape " + shape);
+        }
+    }
+
+    // size string fields
+    public static String flatStringJson(int size) {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("\"field").append(i).append("\":\"value-").append(i).append('"');
+        }
+        return json.append('}').toString();
+    }
+
+    public static Map<String, Object> flatMap(int size) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            map.put("field" + i, (i % 3 == 0) ? (Object) i : "value-" + i);
+        }
+        return map;
+    }
+
+    // size fields mixing strings, ints, longs, doubles and booleans
+    private static String flatJson(int size) {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendScalar(json.append("\"field").append(i).append("\":"), i);
+        }
+        return json.append('}').toString();
+    }
+
+    // size / 4 nested objects with 4 scalar fields each, plus one inner object
+    private static String nestedJson(int size) {
+        StringBuilder json = new StringBuilder("{\"id\":\"root\"");
+        for (int i = 0; i < Math.max(1, size / 4); i++) {
+            json.append(",\"object").append(i).append("\":{");
+            for (int j = 0; j < 4; j++) {
+                if (j > 0) {
+                    json.append(',');
+                }
+                appendScalar(json.append("\"field").append(j).append("\":"), j);
+            }
+            json.append(",\"inner\":{\"name\":\"inner-").append(i).append("\",\"active\":true}}");
+        }
+        return json.append('}').toString();
+    }
+
+    // one array with size objects
+    private static String wideArrayJson(int size) {
+        StringBuilder json = new StringBuilder("{\"id\":\"root\",\"items\":[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"itemId\":\"item-").append(i)
+                    .append("\",\"price\":").append(i).append(".5")
+                    .append(",\"available\":").append(i % 2 == 0).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static void appendScalar(StringBuilder json, int i) {
+        switch (i % 5) {
+            case 0:
+                json.append('"').append("value-").append(i).append('"');
+                break;
+            case 1:
+                json.append(i);
+                break;
+            case 2:
+                json.append(10_000_000_000L + i);
+                break;
+            case 3:
+                json.append(i).append(".25");
+                break;
+            default:
+                json.append(i % 2 == 0);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.hifly.kafka.mongo;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.InsertOneResult;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-process stand-in for a MongoCollection of BsonDocument, keyed by _id.
+ * Supports the surface used by the sink task: find(eq _id).first(), insertOne, replaceOne, deleteOne.
+ * Documents are deep-copied on read and write, as the driver would decode/encode them.
+ */
+public final class InMemoryMongoCollection implements InvocationHandler {
+
+    private static final String ID = "_id";
+
+    private final MongoNamespace namespace;
+    private final Map<BsonValue, BsonDocument> documents = new HashMap<>();
+
+    private InMemoryMongoCollection(MongoNamespace namespace) {
+        this.namespace = namespace;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static MongoCollection<BsonDocument> create(String database, String collection) {
+        return (MongoCollection<BsonDocument>) Proxy.newProxyInstance(
+                InMemoryMongoCollection.class.getClassLoader(),
+                new Class<?>[] {MongoCollection.class},
+                new InMemoryMongoCollection(new MongoNamespace(database, collection)));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "find":
+                return find(args != null && args.length > 0 ? id((Bson) args[0]) : null);
+            case "insertOne": {
+                BsonDocument document = (BsonDocument) args[0];
+                documents.put(document.get(ID), document.clone());
+                return InsertOneResult.acknowledged(document.get(ID));
+            }
+            case "replaceOne": {
+                BsonValue id = id((Bson) args[0]);
+                if (!documents.containsKey(id)) {
+                    return UpdateResult.acknowledged(0, 0L, null);
+                }
+                documents.put(id, ((BsonDocument) args[1]).clone());
+                return UpdateResult.acknowledged(1, 1L, null);
+            }
+            case "deleteOne":
+                return DeleteResult.acknowledged(documents.remove(id((Bson) args[0])) != null ? 1 : 0);
+            case "countDocuments":
+            case "estimatedDocumentCount":
+                return (long) documents.size();
+            case "drop":
+                documents.clear();
+                return null;
+            case "getNamespace":
+                return namespace;
+            case "getDocumentClass":
+                return BsonDocument.class;
+            case "getCodecRegistry":
+                return MongoClientSettings.getDefaultCodecRegistry();
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "InMemoryMongoCollection{" + namespace + "}";
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    private static BsonValue id(Bson filter) {
+        return filter.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry()).get(ID);
+    }
+
+    private FindIterable<?> find(BsonValue id) {
+        return (FindIterable<?>) Proxy.newProxyInstance(
+                InMemoryMongoCollection.class.getClassLoader(),
+                new Class<?>[] {FindIterable.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "first": {
+                            BsonDocument document = id != null ? documents.get(id) : null;
+                            return document != null ? document.clone() : null;
+                        }
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "InMemoryFindIterable{" + id + "}";
+                        default:
+                            if (method.getReturnType() == FindIterable.class) {
+                                // filter, sort, projection, limit...: options are ignored
+                                return proxy;
+                            }
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,159 @@
+package org.hifly.kafka.mongo;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoNamespace;
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * In-process stand-in for a queried MongoCollection of Document.
+ * Supports the surface used by the source task: find and aggregate, with or without a result class, iterated in insertion order.
+ * Filters, sort, projection and pipeline stages are ignored. Documents are kept as BSON bytes and decoded on each read,
+ * as the driver would decode the cursor batches.
+ */
+public final class InMemoryQueryCollection implements InvocationHandler {
+
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+
+    private final MongoNamespace namespace;
+    private final List<RawBsonDocument> documents = new ArrayList<>();
+
+    private InMemoryQueryCollection(MongoNamespace namespace) {
+        this.namespace = namespace;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static MongoCollection<Document> create(String database, String collection, List<Document> documents) {
+        InMemoryQueryCollection handler = new InMemoryQueryCollection(new MongoNamespace(database, collection));
+        for (Document document : documents) {
+            handler.documents.add(new RawBsonDocument(document, DOCUMENT_CODEC));
+        }
+        return (MongoCollection<Document>) Proxy.newProxyInstance(
+                InMemoryQueryCollection.class.getClassLoader(),
+                new Class<?>[] {MongoCollection.class},
+                handler);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "find":
+                return iterable(FindIterable.class, resultClass(args));
+            case "aggregate":
+                return iterable(AggregateIterable.class, resultClass(args));
+            case "countDocuments":
+            case "estimatedDocumentCount":
+                return (long) documents.size();
+            case "getNamespace":
+                return namespace;
+            case "getDocumentClass":
+                return Document.class;
+            case "getCodecRegistry":
+                return MongoClientSettings.getDefaultCodecRegistry();
+            case "getReadPreference":
+                return ReadPreference.primary();
+            case "getReadConcern":
+                return ReadConcern.DEFAULT;
+            case "withReadPreference":
+            case "withReadConcern":
+                // read options are ignored
+                return proxy;
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "InMemoryQueryCollection{" + namespace + "}";
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    // find(Class), find(Bson, Class), aggregate(List, Class): the class is the last argument
+    private static Class<?> resultClass(Object[] args) {
+        if (args != null && args.length > 0 && args[args.length - 1] instanceof Class) {
+            return (Class<?>) args[args.length - 1];
+        }
+        return Document.class;
+    }
+
+    private Object iterable(Class<?> iterableClass, Class<?> resultClass) {
+        return Proxy.newProxyInstance(
+                InMemoryQueryCollection.class.getClassLoader(),
+                new Class<?>[] {iterableClass},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "iterator":
+                        case "cursor":
+                            return cursor(resultClass);
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "InMemoryIterable{" + namespace + "}";
+                        default:
+                            if (method.getReturnType() == iterableClass) {
+                                // filter, sort, projection, batchSize...: options are ignored
+                                return proxy;
+                            }
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private MongoCursor<?> cursor(Class<?> resultClass) {
+        // position of the next document: all documents are one cursor batch
+        int[] next = {0};
+        return (MongoCursor<?>) Proxy.newProxyInstance(
+                InMemoryQueryCollection.class.getClassLoader(),
+                new Class<?>[] {MongoCursor.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "hasNext":
+                            return next[0] < documents.size();
+                        case "next":
+                            if (next[0] >= documents.size()) {
+                                throw new NoSuchElementException();
+                            }
+                            return decode(documents.get(next[0]++), resultClass);
+                        case "tryNext":
+                            return next[0] < documents.size() ? decode(documents.get(next[0]++), resultClass) : null;
+                        case "available":
+                            return documents.size() - next[0];
+                        case "close":
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "InMemoryCursor{" + namespace + "}";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    // the driver copies each raw document out of the reply buffer
+    private static Object decode(RawBsonDocument document, Class<?> resultClass) {
+        if (resultClass == RawBsonDocument.class) {
+            return document.clone();
+        }
+        return document.decode(DOCUMENT_CODEC);
+    }
+}
@@ -0,0 +1,177 @@
+package org.hifly.kafka.mongo.sink;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.bson.BsonDocument;
+import org.hifly.kafka.mongo.InMemoryMongoCollection;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end CustomMongoSinkTask.put() with synthetic SinkRecord batches.
+ *
+ * - backend=fake: in-process InMemoryMongoCollection, measures the task itself
+ * - backend=mongod: a local mongod at -Dmongo.uri (default mongodb://localhost:27017)
+ *
+ * putThroughput reports put() calls/s and records/s (aux counter), putLatency reports p50/p99 of put().
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CustomMongoSinkTaskBenchmark {
+
+    private static final String BACKEND_FAKE = "fake";
+    private static final String BACKEND_MONGOD = "mongod";
+
+    private static final String TOPIC = "benchmark-topic";
+    private static final String DATABASE = "benchmark";
+    private static final String COLLECTION = "sink";
+    private static final String ARRAY_FIELD = "events";
+    private static final String ID_FIELD = "userId";
+
+    // number of distinct batches cycled by the benchmark
+    private static final int BATCHES = 32;
+
+    @Param({BACKEND_FAKE})
+    public String backend;
+
+    // distinct Kafka keys (= Mongo documents)
+    @Param({"1000", "100000"})
+    public int keyCardinality;
+
+    // distinct array elements per document after dedup: how big arrays grow
+    @Param({"1", "50"})
+    public int arrayGrowth;
+
+    @Param({"0", "10"})
+    public int tombstonePercent;
+
+    @Param({"100", "1000"})
+    public int batchSize;
+
+    private CustomMongoSinkTask task;
+    private MongoClient client;
+    private List<List<SinkRecord>> batches;
+    private int next;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RecordCounter {
+        public long records;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            records = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Map<String, String> props = new HashMap<>();
+        props.put("database", DATABASE);
+        props.put("collection", COLLECTION);
+        props.put("doc.array.field.name", ARRAY_FIELD);
+        props.put("doc.id.name", ID_FIELD);
+        props.put("doc.array.field.dedup.keys", "eventId,source");
+
+        MongoCollection<BsonDocument> collection;
+        if (BACKEND_MONGOD.equals(backend)) {
+            String uri = System.getProperty("mongo.uri", "mongodb://localhost:27017");
+            client = MongoClients.create(MongoClientSettings.builder()
+                    .applyConnectionString(new ConnectionString(uri))
+                    .applyToClusterSettings(b -> b.serverSelectionTimeout(5, TimeUnit.SECONDS))
+                    .build());
+            collection = client.getDatabase(DATABASE).getCollection(COLLECTION, BsonDocument.class);
+            collection.drop();
+        } else {
+            collection = InMemoryMongoCollection.create(DATABASE, COLLECTION);
+        }
+
+        task = new CustomMongoSinkTask();
+        task.start(props, collection);
+
+        Random random = new Random(42);
+        batches = new ArrayList<>(BATCHES);
+        long offset = 0;
+        for (int b = 0; b < BATCHES; b++) {
+            List<SinkRecord> batch = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                String key = "key-" + random.nextInt(keyCardinality);
+                Object value = random.nextInt(100) < tombstonePercent ? null : value(key, random);
+                batch.add(new SinkRecord(TOPIC, 0, null, key, null, value, offset++));
+            }
+            batches.add(batch);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        task.stop();
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void putThroughput(RecordCounter counter) {
+        List<SinkRecord> batch = nextBatch();
+        task.put(batch);
+        counter.records += batch.size();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void putLatency() {
+        task.put(nextBatch());
+    }
+
+    private List<SinkRecord> nextBatch() {
+        List<SinkRecord> batch = batches.get(next);
+        next = (next + 1) % BATCHES;
+        return batch;
+    }
+
+    private Map<String, Object> value(String key, Random random) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("eventId", "evt-" + random.nextInt(arrayGrowth));
+        event.put("source", "benchmark");
+        event.put("ts", System.currentTimeMillis());
+        event.put("amount", random.nextDouble() * 100);
+
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put(ID_FIELD, key);
+        value.put("name", "name-" + key);
+        value.put("status", random.nextBoolean() ? "ACTIVE" : "INACTIVE");
+        value.put("lastUpdate", System.currentTimeMillis());
+        value.put(ARRAY_FIELD, event);
+        return value;
+    }
+}
@@ -0,0 +1,64 @@
+package org.hifly.kafka.mongo.source;
+
+import org.apache.kafka.connect.source.SourceRecord;
+import org.apache.kafka.connect.source.SourceTaskContext;
+import org.apache.kafka.connect.storage.OffsetStorageReader;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SourceTaskContext with an in-memory offset store, standing in for the Connect worker in benchmarks.
+ * Offsets are only stored when commit() is called with the records returned by poll().
+ */
+public class InMemorySourceTaskContext implements SourceTaskContext, OffsetStorageReader {
+
+    private final Map<String, String> configs;
+    private final Map<Map<String, ?>, Map<String, Object>> offsets = new HashMap<>();
+
+    public InMemorySourceTaskContext(Map<String, String> configs) {
+        this.configs = configs;
+    }
+
+    public void commit(List<SourceRecord> records) {
+        for (SourceRecord record : records) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> offset = (Map<String, Object>) record.sourceOffset();
+            offsets.put(record.sourcePartition(), offset);
+        }
+    }
+
+    public void clear() {
+        offsets.clear();
+    }
+
+    @Override
+    public Map<String, String> configs() {
+        return configs;
+    }
+
+    @Override
+    public OffsetStorageReader offsetStorageReader() {
+        return this;
+    }
+
+    @Override
+    public <T> Map<String, Object> offset(Map<String, T> partition) {
+        return offsets.get(partition);
+    }
+
+    @Override
+    public <T> Map<Map<String, T>, Map<String, Object>> offsets(Collection<Map<String, T>> partitions) {
+        Map<Map<String, T>, Map<String, Object>> result = new HashMap<>();
+        for (Map<String, T> partition : partitions) {
+            Map<String, Object> offset = offsets.get(partition);
+            if (offset != null) {
+                result.put(partition, offset);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+}
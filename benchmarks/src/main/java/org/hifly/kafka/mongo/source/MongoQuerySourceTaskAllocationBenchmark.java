@@ -0,0 +1,108 @@
+package org.hifly.kafka.mongo.source;
+
+import org.apache.kafka.connect.source.SourceRecord;
+import org.bson.Document;
+import org.hifly.kafka.mongo.InMemoryQueryCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-record cost of MongoQuerySourceTask.poll() without a mongod: the task reads an InMemoryQueryCollection,
+ * so the scores are the task's own work (document decoding, key extraction, record building), not the query.
+ *
+ * One op is one record. Run with -prof gc: gc.alloc.rate.norm is the heap allocated per record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MongoQuerySourceTaskAllocationBenchmark {
+
+    private static final int DOC_COUNT = 10_000;
+
+    private static final String PATH_FIND = "find";
+    private static final String PATH_PIPELINE = "pipeline";
+
+    private static final String DATABASE = "benchmark";
+    private static final String COLLECTION = "source";
+    private static final String PIPELINE = "[{\"$sort\": {\"" + SourceLoadGenerator.TIME_FIELD + "\": 1}}]";
+
+    @Param({PATH_FIND, PATH_PIPELINE})
+    public String path;
+
+    @Param({MongoQuerySourceConfig.OUTPUT_FORMAT_JSON, MongoQuerySourceConfig.OUTPUT_FORMAT_AVRO, MongoQuerySourceConfig.OUTPUT_FORMAT_BSON})
+    public String outputFormat;
+
+    // approximate BSON size of each document in bytes
+    @Param({"256", "4096"})
+    public int docSize;
+
+    // conversion.threads: 1 converts on the polling thread
+    @Param({"1", "4"})
+    public int conversionThreads;
+
+    private MongoQuerySourceTask task;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String payload = SourceLoadGenerator.payload(docSize);
+        long firstTs = System.currentTimeMillis() - DOC_COUNT;
+        List<Document> documents = new ArrayList<>(DOC_COUNT);
+        for (int i = 0; i < DOC_COUNT; i++) {
+            documents.add(SourceLoadGenerator.document(i, new Date(firstTs + i), payload));
+        }
+
+        Map<String, String> props = new HashMap<>();
+        props.put(MongoQuerySourceConfig.MONGO_URI_CONFIG, "mongodb://localhost:27017");
+        props.put(MongoQuerySourceConfig.MONGO_DB_CONFIG, DATABASE);
+        props.put(MongoQuerySourceConfig.MONGO_COLLECTION_CONFIG, COLLECTION);
+        props.put(MongoQuerySourceConfig.TOPIC_CONFIG, "benchmark-topic");
+        props.put(MongoQuerySourceConfig.TIME_FIELD_CONFIG, SourceLoadGenerator.TIME_FIELD);
+        props.put(MongoQuerySourceConfig.KEY_FIELD_CONFIG, SourceLoadGenerator.KEY_FIELD);
+        props.put(MongoQuerySourceConfig.BASE_FILTER_CONFIG, "{\"status\": {\"$ne\": \"DELETED\"}}");
+        props.put(MongoQuerySourceConfig.POLL_INTERVAL_MS_CONFIG, "0");
+        props.put(MongoQuerySourceConfig.OUTPUT_FORMAT_CONFIG, outputFormat);
+        props.put(MongoQuerySourceConfig.CONVERSION_THREADS_CONFIG, String.valueOf(conversionThreads));
+        // nothing to explain in memory
+        props.put(MongoQuerySourceConfig.INDEX_CHECK_CONFIG, MongoQuerySourceConfig.INDEX_CHECK_OFF);
+        if (PATH_PIPELINE.equals(path)) {
+            props.put(MongoQuerySourceConfig.PIPELINE_CONFIG, PIPELINE);
+        }
+
+        task = new MongoQuerySourceTask();
+        task.initialize(new InMemorySourceTaskContext(props));
+        task.start(props, InMemoryQueryCollection.create(DATABASE, COLLECTION, documents));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        task.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOC_COUNT)
+    public List<SourceRecord> poll() throws InterruptedException {
+        return task.poll();
+    }
+}
@@ -0,0 +1,191 @@
+package org.hifly.kafka.mongo.source;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Updates;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MongoQuerySourceTask.poll() against a local mongod at -Dmongo.uri (default mongodb://localhost:27017).
+ *
+ * The collection is seeded once per (docCount, docSize) by SourceLoadGenerator and reused by later runs.
+ * poll.interval.ms is 0: the scores are the cost of a poll, without the wait between polls.
+ * The task runs on the benchmark's client: command metrics of the task are not recorded.
+ *
+ * - pollLatency: p50/p99 wall time of poll() reading the whole collection, the task restarts without offset before each poll
+ * - pollThroughput: records/s (aux counter), same full reads
+ * - freshnessLag: a document is updated with time.field = now, then polled from the last position,
+ *   the score is the time until its record is returned
+ *
+ * Run with -prof gc: gc.alloc.rate.norm is the heap allocated by each poll.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class MongoQuerySourceTaskBenchmark {
+
+    private static final String PATH_FIND = "find";
+    private static final String PATH_PIPELINE = "pipeline";
+
+    private static final String DATABASE = "benchmark";
+    private static final String TOPIC = "benchmark-topic";
+
+    // same order as the find path, so both paths return the same records
+    private static final String PIPELINE = "[{\"$sort\": {\"" + SourceLoadGenerator.TIME_FIELD + "\": 1}}]";
+
+    @Param({PATH_FIND, PATH_PIPELINE})
+    public String path;
+
+    @Param({MongoQuerySourceConfig.OUTPUT_FORMAT_JSON, MongoQuerySourceConfig.OUTPUT_FORMAT_AVRO, MongoQuerySourceConfig.OUTPUT_FORMAT_BSON})
+    public String outputFormat;
+
+    @Param({"10000", "100000"})
+    public int docCount;
+
+    // approximate BSON size of each document in bytes
+    @Param({"256", "4096"})
+    public int docSize;
+
+    private MongoClient client;
+    private MongoCollection<Document> collection;
+    private Map<String, String> props;
+    private MongoQuerySourceTask task;
+    private InMemorySourceTaskContext context;
+    private List<Object> ids;
+    private Random random;
+
+    @State(Scope.Thread)
+    public static class Rewind {
+        // outside the measurement: new task, no offset, next poll reads from the beginning
+        @Setup(Level.Invocation)
+        public void rewind(MongoQuerySourceTaskBenchmark benchmark) {
+            benchmark.restart();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RecordCounter {
+        public long records;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            records = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String uri = System.getProperty("mongo.uri", "mongodb://localhost:27017");
+        String collectionName = "source_" + docCount + "_" + docSize;
+
+        client = MongoClients.create(uri);
+        collection = client.getDatabase(DATABASE).getCollection(collectionName);
+        SourceLoadGenerator.seed(collection, docCount, docSize);
+
+        props = new HashMap<>();
+        props.put(MongoQuerySourceConfig.MONGO_URI_CONFIG, uri);
+        props.put(MongoQuerySourceConfig.MONGO_DB_CONFIG, DATABASE);
+        props.put(MongoQuerySourceConfig.MONGO_COLLECTION_CONFIG, collectionName);
+        props.put(MongoQuerySourceConfig.TOPIC_CONFIG, TOPIC);
+        props.put(MongoQuerySourceConfig.TIME_FIELD_CONFIG, SourceLoadGenerator.TIME_FIELD);
+        props.put(MongoQuerySourceConfig.KEY_FIELD_CONFIG, SourceLoadGenerator.KEY_FIELD);
+        props.put(MongoQuerySourceConfig.POLL_INTERVAL_MS_CONFIG, "0");
+        // one poll reads the whole collection
+        props.put(MongoQuerySourceConfig.POLL_MAX_RECORDS_CONFIG, "0");
+        props.put(MongoQuerySourceConfig.OUTPUT_FORMAT_CONFIG, outputFormat);
+        if (PATH_PIPELINE.equals(path)) {
+            props.put(MongoQuerySourceConfig.PIPELINE_CONFIG, PIPELINE);
+        }
+
+        context = new InMemorySourceTaskContext(props);
+        restart();
+
+        ids = new ArrayList<>(docCount);
+        for (Document doc : collection.find().projection(Projections.include("_id"))) {
+            ids.add(doc.get("_id"));
+        }
+        random = new Random(42);
+    }
+
+    void restart() {
+        if (task != null) {
+            task.stop();
+        }
+        context.clear();
+        task = new MongoQuerySourceTask();
+        task.initialize(context);
+        task.start(props, collection);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        task.stop();
+        client.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<SourceRecord> pollLatency(Rewind rewind) throws InterruptedException {
+        return poll();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void pollThroughput(Rewind rewind, RecordCounter counter) throws InterruptedException {
+        counter.records += poll().size();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<SourceRecord> freshnessLag() throws InterruptedException {
+        long writeTs = System.currentTimeMillis();
+        collection.updateOne(Filters.eq("_id", ids.get(random.nextInt(ids.size()))),
+                Updates.set(SourceLoadGenerator.TIME_FIELD, new Date(writeTs)));
+
+        List<SourceRecord> records = poll();
+        for (SourceRecord record : records) {
+            Object ts = record.sourceOffset().get("lastProcessedTs");
+            if (ts instanceof Long && (Long) ts == writeTs) {
+                return records;
+            }
+        }
+        throw new IllegalStateException("Updated document not returned by poll()");
+    }
+
+    private List<SourceRecord> poll() throws InterruptedException {
+        List<SourceRecord> records = task.poll();
+        context.commit(records);
+        return records;
+    }
+}
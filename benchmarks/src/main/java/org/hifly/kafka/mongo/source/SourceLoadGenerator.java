@@ -0,0 +1,96 @@
+package org.hifly.kafka.mongo.source;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Indexes;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Seeds a collection with synthetic documents for MongoQuerySourceTask benchmarks.
+ *
+ * Documents have a time field, a nested key (customer.id) and a string payload padding the document to docSize bytes.
+ * Time values are 1 ms apart and end at the seeding time, (time field, _id) is indexed: the order of the task queries.
+ *
+ * Standalone usage, e.g. to prepare a large collection once:
+ * java -cp target/benchmarks.jar org.hifly.kafka.mongo.source.SourceLoadGenerator mongodb://localhost:27017 benchmark source 50000000 1024
+ */
+public final class SourceLoadGenerator {
+
+    public static final String TIME_FIELD = "lastUpdateTime";
+    public static final String KEY_FIELD = "customer.id";
+
+    private static final int INSERT_BATCH = 1000;
+    private static final int CUSTOMERS = 10_000;
+    private static final String[] STATUSES = {"ACTIVE", "INACTIVE", "SUSPENDED"};
+
+    // size of the document without payload, roughly
+    private static final int BASE_DOC_SIZE = 120;
+
+    private SourceLoadGenerator() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 5) {
+            System.err.println("Usage: SourceLoadGenerator <mongo uri> <database> <collection> <docCount> <docSize>");
+            System.exit(1);
+        }
+        try (MongoClient client = MongoClients.create(args[0])) {
+            MongoCollection<Document> collection = client.getDatabase(args[1]).getCollection(args[2]);
+            long start = System.currentTimeMillis();
+            seed(collection, Long.parseLong(args[3]), Integer.parseInt(args[4]));
+            System.out.println("Seeded " + args[3] + " documents in " + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    /*
+     Seed docCount documents unless the collection already has that many: large collections are prepared once
+     */
+    public static void seed(MongoCollection<Document> collection, long docCount, int docSize) {
+        if (collection.estimatedDocumentCount() == docCount) {
+            collection.createIndex(Indexes.ascending(TIME_FIELD, "_id"));
+            return;
+        }
+        collection.drop();
+
+        String payload = payload(docSize);
+        long firstTs = System.currentTimeMillis() - docCount;
+        List<Document> batch = new ArrayList<>(INSERT_BATCH);
+        for (long i = 0; i < docCount; i++) {
+            batch.add(document(i, new Date(firstTs + i), payload));
+            if (batch.size() == INSERT_BATCH) {
+                collection.insertMany(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            collection.insertMany(batch);
+        }
+        collection.createIndex(Indexes.ascending(TIME_FIELD, "_id"));
+    }
+
+    static Document document(long i, Date ts, String payload) {
+        return new Document("_id", new ObjectId())
+                .append(TIME_FIELD, ts)
+                .append("customer", new Document("id", "C" + (i % CUSTOMERS)).append("segment", (int) (i % 7)))
+                .append("status", STATUSES[(int) (i % STATUSES.length)])
+                .append("amount", (i % 100_000) / 100.0)
+                .append("tags", Arrays.asList("tag-" + (i % 10), "tag-" + (i % 13)))
+                .append("payload", payload);
+    }
+
+    static String payload(int docSize) {
+        int size = Math.max(0, docSize - BASE_DOC_SIZE);
+        StringBuilder sb = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.toString();
+    }
+}
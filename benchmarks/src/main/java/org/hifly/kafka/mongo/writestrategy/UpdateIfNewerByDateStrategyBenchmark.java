@@ -0,0 +1,80 @@
+package org.hifly.kafka.mongo.writestrategy;
+
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.kafka.connect.sink.MongoSinkConfig;
+import com.mongodb.kafka.connect.sink.converter.SinkDocument;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.hifly.kafka.Payloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdateIfNewerByDateStrategyBenchmark {
+
+    private static final String TOPIC = "benchmark-topic";
+    private static final String DATE_FIELD = "lastUpdateTs";
+
+    @Param({Payloads.FLAT, Payloads.NESTED, Payloads.WIDE_ARRAY})
+    public String shape;
+
+    @Param({"10", "200"})
+    public int size;
+
+    private UpdateIfNewerByDateStrategy strategy;
+    private SinkDocument documentWithDate;
+    private SinkDocument documentWithoutDate;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Map<String, String> props = new HashMap<>();
+        props.put("connection.uri", "mongodb://localhost:27017");
+        props.put("topics", TOPIC);
+        props.put("database", "benchmark");
+        props.put("collection", "benchmark");
+        props.put(UpdateIfNewerByDateStrategy.UPSERT_DATE_FIELD_CONFIG, DATE_FIELD);
+
+        strategy = new UpdateIfNewerByDateStrategy();
+        strategy.configure(new MongoSinkConfig(props).getMongoSinkTopicConfig(TOPIC));
+
+        BsonDocument key = new BsonDocument("_id", new BsonString("B7D6D0317F8E6D418CB337B0D9E66466"));
+
+        BsonDocument value = BsonDocument.parse(Payloads.json(shape, size));
+        value.put("_id", key.get("_id"));
+        documentWithoutDate = new SinkDocument(key, value);
+
+        BsonDocument valueWithDate = value.clone();
+        valueWithDate.put(DATE_FIELD, new BsonDateTime(System.currentTimeMillis()));
+        documentWithDate = new SinkDocument(key, valueWithDate);
+    }
+
+    @Benchmark
+    public WriteModel<BsonDocument> createWriteModelWithDate() {
+        return strategy.createWriteModel(documentWithDate);
+    }
+
+    @Benchmark
+    public WriteModel<BsonDocument> createWriteModelWithoutDate() {
+        return strategy.createWriteModel(documentWithoutDate);
+    }
+}
@@ -0,0 +1,69 @@
+package org.hifly.kafka.smt;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.hifly.kafka.Payloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExplodeJsonStringBenchmark {
+
+    private static final String JSON_FIELD = "json_data";
+
+    @Param({Payloads.FLAT, Payloads.NESTED, Payloads.WIDE_ARRAY})
+    public String shape;
+
+    @Param({"10", "200"})
+    public int size;
+
+    private ExplodeJsonString<SinkRecord> transformation;
+    private SinkRecord record;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        transformation = new ExplodeJsonString<>();
+        transformation.configure(Collections.singletonMap(ExplodeJsonString.ROWKEY_CONFIG, JSON_FIELD));
+
+        Schema schema = SchemaBuilder.struct()
+                .field("id", Schema.INT32_SCHEMA)
+                .field(JSON_FIELD, Schema.STRING_SCHEMA)
+                .build();
+        Struct value = new Struct(schema)
+                .put("id", 1)
+                .put(JSON_FIELD, Payloads.json(shape, size));
+
+        record = new SinkRecord("benchmark-topic", 0, null, null, schema, value, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        transformation.close();
+    }
+
+    @Benchmark
+    public SinkRecord apply() {
+        return transformation.apply(record);
+    }
+}
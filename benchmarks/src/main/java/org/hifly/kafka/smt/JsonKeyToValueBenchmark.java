@@ -0,0 +1,67 @@
+package org.hifly.kafka.smt;
+
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.hifly.kafka.Payloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonKeyToValueBenchmark {
+
+    private static final String KEY = "{\"_id\": {\"_id\":\"B7D6D0317F8E6D418CB337B0D9E66466\"}}";
+
+    @Param({"10", "200"})
+    public int size;
+
+    private JsonKeyToValue<SinkRecord> transformation;
+    private SinkRecord stringValueRecord;
+    private SinkRecord mapValueRecord;
+    private SinkRecord tombstoneRecord;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        transformation = new JsonKeyToValue<>();
+        Map<String, Object> props = new HashMap<>();
+        props.put(JsonKeyToValue.ROWKEY_CONFIG, "ID");
+        props.put(JsonKeyToValue.IDKEY_CONFIG, "_id");
+        transformation.configure(props);
+
+        stringValueRecord = new SinkRecord("benchmark-topic", 0, null, KEY, null, Payloads.flatStringJson(size), 0);
+        mapValueRecord = new SinkRecord("benchmark-topic", 0, null, KEY, null, Payloads.flatMap(size), 0);
+        tombstoneRecord = new SinkRecord("benchmark-topic", 0, null, KEY, null, null, 0);
+    }
+
+    @Benchmark
+    public SinkRecord applyStringValue() {
+        return transformation.apply(stringValueRecord);
+    }
+
+    @Benchmark
+    public SinkRecord applyMapValue() {
+        return transformation.apply(mapValueRecord);
+    }
+
+    @Benchmark
+    public SinkRecord applyTombstone() {
+        return transformation.apply(tombstoneRecord);
+    }
+}
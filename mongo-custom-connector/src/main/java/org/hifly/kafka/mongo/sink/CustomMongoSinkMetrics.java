@@ -0,0 +1,165 @@
+package org.hifly.kafka.mongo.sink;
+
+import org.apache.kafka.common.metrics.JmxReporter;
+import org.apache.kafka.common.metrics.KafkaMetricsContext;
+import org.apache.kafka.common.metrics.Measurable;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.MetricsReporter;
+import org.apache.kafka.common.utils.Time;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a CustomMongoSinkTask, exported through JMX as
+ * kafka.connect.mongo.sink:type=mongo-sink-task-metrics,connector=...,database=...,collection=...
+ *
+ * Values are recorded into LongAdder based histograms and counters, Kafka Metrics only reads them when queried.
+ * Histograms (count, avg, max, p50, p95, p99) cover the samples * time window of the MetricConfig, as Kafka sensors.
+ * The document size is measured on 1 in DOCUMENT_SIZE_SAMPLING written documents, the others are not encoded twice.
+ */
+public class CustomMongoSinkMetrics implements AutoCloseable {
+
+    public static final String JMX_NAMESPACE = "kafka.connect.mongo.sink";
+    public static final String GROUP = "mongo-sink-task-metrics";
+
+    private static final double NANOS_PER_MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    static final int DOCUMENT_SIZE_SAMPLING = 64;
+
+    private final Metrics metrics;
+    private final Map<String, String> tags;
+
+    private final LongAdderHistogram putBatchSize;
+    private final LongAdderHistogram putTime;
+    private final LongAdderHistogram findTime;
+    private final LongAdderHistogram replaceTime;
+    private final LongAdderHistogram insertTime;
+    private final LongAdderHistogram deleteTime;
+    private final LongAdderHistogram mergedArrayLength;
+    private final LongAdderHistogram documentSize;
+
+    private final LongAdder dedupInputElements = new LongAdder();
+    private final LongAdder dedupOutputElements = new LongAdder();
+    private final LongAdder skippedRecords = new LongAdder();
+
+    // document size: the task writes from a single thread, the buffer is reused
+    private final BasicOutputBuffer sizeBuffer = new BasicOutputBuffer();
+    private final BsonDocumentCodec codec = new BsonDocumentCodec();
+    private long writes;
+
+    public CustomMongoSinkMetrics(String connector, String database, String collection) {
+        this(connector, database, collection, Collections.singletonList(new JmxReporter()), Time.SYSTEM);
+    }
+
+    CustomMongoSinkMetrics(String connector, String database, String collection,
+                           List<MetricsReporter> reporters, Time time) {
+        this.tags = new LinkedHashMap<>();
+        tags.put("connector", connector);
+        tags.put("database", database);
+        tags.put("collection", collection);
+
+        MetricConfig metricConfig = new MetricConfig();
+        this.metrics = new Metrics(metricConfig, reporters, time, new KafkaMetricsContext(JMX_NAMESPACE));
+
+        this.putBatchSize = addHistogram(metricConfig, time, "put-batch-size", "Records per put()", 1);
+        this.putTime = addHistogram(metricConfig, time, "put-time", "put() time in ms", NANOS_PER_MS);
+        this.findTime = addHistogram(metricConfig, time, "find-time", "find() time in ms", NANOS_PER_MS);
+        this.replaceTime = addHistogram(metricConfig, time, "replace-time", "replaceOne() time in ms", NANOS_PER_MS);
+        this.insertTime = addHistogram(metricConfig, time, "insert-time", "insertOne() time in ms", NANOS_PER_MS);
+        this.deleteTime = addHistogram(metricConfig, time, "delete-time", "deleteOne() time in ms", NANOS_PER_MS);
+        this.mergedArrayLength = addHistogram(metricConfig, time, "merged-array-length", "Array length after merge and dedup", 1);
+        this.documentSize = addHistogram(metricConfig, time, "document-size",
+                "BSON size in bytes of 1 in " + DOCUMENT_SIZE_SAMPLING + " written documents", 1);
+
+        addMetric("dedup-input-elements-total", "Array elements before dedup", (config, now) -> dedupInputElements.sum());
+        addMetric("dedup-output-elements-total", "Array elements after dedup", (config, now) -> dedupOutputElements.sum());
+        addMetric("dedup-collapse-ratio", "Share of array elements removed by dedup", (config, now) -> {
+            long input = dedupInputElements.sum();
+            return input == 0 ? Double.NaN : 1.0 - (double) dedupOutputElements.sum() / input;
+        });
+        addMetric("skipped-records-total", "Records skipped because doc.array.field.name is missing",
+                (config, now) -> skippedRecords.sum());
+    }
+
+    public void recordPut(int records, long nanos) {
+        putBatchSize.record(records);
+        putTime.record(nanos);
+    }
+
+    public void recordFind(long nanos) {
+        findTime.record(nanos);
+    }
+
+    public void recordReplace(long nanos, BsonDocument document) {
+        replaceTime.record(nanos);
+        recordDocumentSize(document);
+    }
+
+    public void recordInsert(long nanos, BsonDocument document) {
+        insertTime.record(nanos);
+        recordDocumentSize(document);
+    }
+
+    public void recordDelete(long nanos) {
+        deleteTime.record(nanos);
+    }
+
+    public void recordMerge(int inputElements, int outputElements) {
+        dedupInputElements.add(inputElements);
+        dedupOutputElements.add(outputElements);
+        mergedArrayLength.record(outputElements);
+    }
+
+    public void recordSkipped() {
+        skippedRecords.increment();
+    }
+
+    public Metrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        metrics.close();
+    }
+
+    private void recordDocumentSize(BsonDocument document) {
+        if (writes++ % DOCUMENT_SIZE_SAMPLING == 0) {
+            documentSize.record(bsonSize(document));
+        }
+    }
+
+    private int bsonSize(BsonDocument document) {
+        sizeBuffer.truncateToPosition(0);
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(sizeBuffer)) {
+            codec.encode(writer, document, EncoderContext.builder().build());
+        }
+        return sizeBuffer.getPosition();
+    }
+
+    private LongAdderHistogram addHistogram(MetricConfig metricConfig, Time time, String name, String description, double scale) {
+        LongAdderHistogram histogram = new LongAdderHistogram(metricConfig.timeWindowMs(), metricConfig.samples(), time::milliseconds);
+        addMetric(name + "-count", description + ", count", (config, now) -> histogram.count());
+        addMetric(name + "-avg", description + ", average", (config, now) -> histogram.mean() / scale);
+        addMetric(name + "-max", description + ", maximum", (config, now) -> histogram.max() / scale);
+        addMetric(name + "-p50", description + ", median", (config, now) -> histogram.percentile(50) / scale);
+        addMetric(name + "-p95", description + ", 95th percentile", (config, now) -> histogram.percentile(95) / scale);
+        addMetric(name + "-p99", description + ", 99th percentile", (config, now) -> histogram.percentile(99) / scale);
+        return histogram;
+    }
+
+    private void addMetric(String name, String description, Measurable measurable) {
+        metrics.addMetric(metrics.metricName(name, GROUP, description, tags), measurable);
+    }
+}
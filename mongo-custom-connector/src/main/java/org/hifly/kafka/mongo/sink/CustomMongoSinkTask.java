@@ -1,5 +1,6 @@
 package org.hifly.kafka.mongo.sink;
 
+import org.apache.kafka.connect.errors.ConnectException;
 import org.apache.kafka.connect.sink.SinkTask;
 import org.apache.kafka.connect.sink.SinkRecord;
 import org.bson.BsonDocument;
@@ -7,9 +8,8 @@ import org.bson.BsonString;
 import org.bson.BsonValue;
 import org.bson.BsonArray;
 
+import com.mongodb.ConnectionString;
 import com.mongodb.client.MongoCollection;
-import com.mongodb.client.MongoClients;
-import com.mongodb.client.MongoClient;
 import com.mongodb.client.model.Filters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,20 +24,35 @@ public class CustomMongoSinkTask extends SinkTask {
     private MongoCollection<BsonDocument> collection;
     private String arrayField;
     private String dedupArrayFieldKeys;
-    private MongoClient mongoClient;
+    private MongoClientRegistry.Lease clientLease;
+    private CustomMongoSinkMetrics metrics;
 
     @Override
     public void start(Map<String, String> props) {
-        mongoClient = MongoClients.create(props.get("connection.uri"));
-        collection = mongoClient
+        // shared with the other tasks of the worker using the same uri and pool settings
+        clientLease = MongoClientRegistry.acquire(new ConnectionString(props.get("connection.uri")),
+            intProp(props, "connection.pool.max.size", 1), intProp(props, "connection.pool.min.size", 0),
+            longProp(props, "connection.pool.max.idle.ms", 0));
+        start(props, clientLease.client()
             .getDatabase(props.get("database"))
-            .getCollection(props.get("collection"), BsonDocument.class);
+            .getCollection(props.get("collection"), BsonDocument.class));
+    }
+
+    // also used by benchmarks to run the task against a given collection
+    void start(Map<String, String> props, MongoCollection<BsonDocument> collection) {
+        this.collection = collection;
         arrayField = props.get("doc.array.field.name");
         dedupArrayFieldKeys = props.get("doc.array.field.dedup.keys");
+
+        // "name" is the connector name, part of the task configs
+        String databaseName = collection.getNamespace().getDatabaseName();
+        String collectionName = collection.getNamespace().getCollectionName();
+        metrics = new CustomMongoSinkMetrics(props.getOrDefault("name", collectionName), databaseName, collectionName);
     }
 
     @Override
     public void put(Collection<SinkRecord> records) {
+        long putStart = System.nanoTime();
         for (SinkRecord record : records) {
 
             // Tombstone message: value is null, delete doc
@@ -45,7 +60,9 @@ public class CustomMongoSinkTask extends SinkTask {
                 String keyRaw = record.key().toString();
                 String keyResult = getKeyResult(keyRaw);
                 log.debug("Delete doc with id {}", keyResult);
+                long start = System.nanoTime();
                 collection.deleteOne(Filters.eq("_id", new BsonString(keyResult)));
+                metrics.recordDelete(System.nanoTime() - start);
                 continue;
             }
 
@@ -55,11 +72,14 @@ public class CustomMongoSinkTask extends SinkTask {
 
             if (!valueDoc.containsKey(arrayField)) {
                 log.warn("Message does not contain element {} - It will be skipped", arrayField);
+                metrics.recordSkipped();
                 continue;
             }
 
             BsonValue newArrayElement = valueDoc.get(arrayField);
+            long findStart = System.nanoTime();
             BsonDocument existingDoc = collection.find(Filters.eq("_id", new BsonString(keyResult))).first();
+            metrics.recordFind(System.nanoTime() - findStart);
 
             if (existingDoc != null) {
                 log.debug("Existing doc found {}", existingDoc);
@@ -96,9 +116,12 @@ public class CustomMongoSinkTask extends SinkTask {
                 BsonArray dedupeArrayField = new BsonArray();
                 dedupeArrayField.addAll(latestMap.values());
                 existingDoc.put(arrayField, dedupeArrayField);
+                metrics.recordMerge(arrayFieldArray.size(), dedupeArrayField.size());
 
                 log.debug("Replace document {}", keyResult);
+                long start = System.nanoTime();
                 collection.replaceOne(Filters.eq("_id", new BsonString(keyResult)), existingDoc);
+                metrics.recordReplace(System.nanoTime() - start, existingDoc);
 
             } else {
                 // New doc: all fields from incoming, "arrayField" as array
@@ -107,9 +130,12 @@ public class CustomMongoSinkTask extends SinkTask {
                 arrayFieldArray.add(newArrayElement);
                 valueDoc.put(arrayField, arrayFieldArray);
                 log.debug("Insert a new document {}", valueDoc);
+                long start = System.nanoTime();
                 collection.insertOne(valueDoc);
+                metrics.recordInsert(System.nanoTime() - start, valueDoc);
             }
         }
+        metrics.recordPut(records.size(), System.nanoTime() - putStart);
     }
 
     private static String getKeyResult(String keyRaw) {
@@ -136,7 +162,36 @@ public class CustomMongoSinkTask extends SinkTask {
 
     @Override
     public void stop() {
-        if (mongoClient != null) mongoClient.close();
+        if (clientLease != null) clientLease.close();
+        if (metrics != null) metrics.close();
+    }
+
+    private static Integer intProp(Map<String, String> props, String name, int min) {
+        Long value = longProp(props, name, min);
+        if (value != null && value > Integer.MAX_VALUE) {
+            throw new ConnectException("Invalid value " + value + " for " + name + ": must be at most " + Integer.MAX_VALUE);
+        }
+        return value != null ? value.intValue() : null;
+    }
+
+    /*
+     null when not set, ConnectException naming the property when not a number of at least min
+     */
+    static Long longProp(Map<String, String> props, String name, long min) {
+        String value = props.get(name);
+        if (value == null) {
+            return null;
+        }
+        long parsed;
+        try {
+            parsed = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ConnectException("Invalid value '" + value + "' for " + name + ": not a number", e);
+        }
+        if (parsed < min) {
+            throw new ConnectException("Invalid value " + parsed + " for " + name + ": must be at least " + min);
+        }
+        return parsed;
     }
 
     private BsonDocument convertToBsonDocument(Object value) {
@@ -0,0 +1,208 @@
+package org.hifly.kafka.mongo.sink;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Windowed histogram of non negative long values, recorded with LongAdder counters (no locks, no allocation).
+ *
+ * As the Kafka SampledStat, values are recorded in one of samples sub-histograms, each covering windowMs:
+ * when the current one is older than windowMs the next one is reset and takes the new values.
+ * Reads only use the samples started in the last samples * windowMs.
+ *
+ * Buckets are log-linear: 4 buckets per power of two, so a percentile is within 25% of the recorded value.
+ * Percentiles return the upper bound of the bucket, capped at the maximum recorded value.
+ */
+public class LongAdderHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int BUCKETS = SUB_BUCKETS * 62;
+
+    private final Sample[] samples;
+    private final long windowMs;
+    private final LongSupplier clock;
+    private volatile int current;
+
+    /*
+     clock: current time in ms
+     */
+    public LongAdderHistogram(long windowMs, int samples, LongSupplier clock) {
+        if (windowMs <= 0 || samples < 1) {
+            throw new IllegalArgumentException("windowMs and samples must be positive");
+        }
+        this.windowMs = windowMs;
+        this.clock = clock;
+        this.samples = new Sample[samples];
+        long now = clock.getAsLong();
+        for (int i = 0; i < samples; i++) {
+            this.samples[i] = new Sample(now);
+        }
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        sample(clock.getAsLong()).record(value);
+    }
+
+    public long count() {
+        long now = clock.getAsLong();
+        long count = 0;
+        for (Sample sample : samples) {
+            if (live(sample, now)) {
+                count += sample.count.sum();
+            }
+        }
+        return count;
+    }
+
+    public long sum() {
+        long now = clock.getAsLong();
+        long sum = 0;
+        for (Sample sample : samples) {
+            if (live(sample, now)) {
+                sum += sample.sum.sum();
+            }
+        }
+        return sum;
+    }
+
+    public long max() {
+        long now = clock.getAsLong();
+        long max = 0;
+        for (Sample sample : samples) {
+            if (live(sample, now)) {
+                max = Math.max(max, sample.max.get());
+            }
+        }
+        return max;
+    }
+
+    public double mean() {
+        long now = clock.getAsLong();
+        long count = 0;
+        long sum = 0;
+        for (Sample sample : samples) {
+            if (live(sample, now)) {
+                count += sample.count.sum();
+                sum += sample.sum.sum();
+            }
+        }
+        return count == 0 ? Double.NaN : (double) sum / count;
+    }
+
+    /*
+     percentile in (0, 100], NaN if nothing was recorded in the window
+     */
+    public double percentile(double percentile) {
+        long now = clock.getAsLong();
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        long max = 0;
+        for (Sample sample : samples) {
+            if (!live(sample, now)) {
+                continue;
+            }
+            for (int i = 0; i < BUCKETS; i++) {
+                long n = sample.buckets[i].sum();
+                counts[i] += n;
+                total += n;
+            }
+            max = Math.max(max, sample.max.get());
+        }
+        if (total == 0) {
+            return Double.NaN;
+        }
+
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /*
+     The sample taking the values at now, moving to the next one when the current one is older than windowMs
+     */
+    private Sample sample(long now) {
+        Sample sample = samples[current];
+        if (now - sample.start < windowMs) {
+            return sample;
+        }
+        synchronized (this) {
+            sample = samples[current];
+            if (now - sample.start >= windowMs) {
+                int next = (current + 1) % samples.length;
+                sample = samples[next];
+                sample.reset(now);
+                current = next;
+            }
+            return sample;
+        }
+    }
+
+    private boolean live(Sample sample, long now) {
+        return now - sample.start < windowMs * samples.length;
+    }
+
+    /*
+     values 0-3 have their own bucket, then [2^e, 2^(e+1)) is split in 4 buckets
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS * (exponent - 1) + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + 1;
+        int sub = bucket % SUB_BUCKETS;
+        long upper = ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+
+    private static final class Sample {
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        private volatile long start;
+
+        private Sample(long start) {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+            this.start = start;
+        }
+
+        private void record(long value) {
+            buckets[bucket(value)].increment();
+            count.increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        private void reset(long now) {
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            count.reset();
+            sum.reset();
+            max.reset();
+            start = now;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.hifly.kafka.mongo.sink;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.KafkaMetric;
+import org.apache.kafka.common.utils.Time;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomMongoSinkMetricsTest {
+
+    private final ManualTime time = new ManualTime();
+    private CustomMongoSinkMetrics metrics;
+
+    @AfterEach
+    void tearDown() {
+        if (metrics != null) {
+            metrics.close();
+        }
+    }
+
+    @Test
+    void testPutAndWriteMetrics() {
+        metrics = new CustomMongoSinkMetrics("conn", "testdb", "orders", Collections.emptyList(), time);
+
+        metrics.recordPut(10, TimeUnit.MILLISECONDS.toNanos(40));
+        metrics.recordPut(30, TimeUnit.MILLISECONDS.toNanos(20));
+        metrics.recordFind(TimeUnit.MILLISECONDS.toNanos(2));
+        metrics.recordDelete(TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.recordMerge(4, 3);
+        metrics.recordMerge(6, 3);
+        metrics.recordSkipped();
+
+        assertEquals(2.0, value("put-batch-size-count"));
+        assertEquals(20.0, value("put-batch-size-avg"), 0.001);
+        assertEquals(30.0, value("put-batch-size-max"));
+        assertEquals(40.0, value("put-time-max"), 0.001);
+        assertEquals(30.0, value("put-time-avg"), 0.001);
+        assertEquals(2.0, value("find-time-p99"), 0.001);
+        assertEquals(3.0, value("delete-time-avg"), 0.001);
+        assertEquals(3.0, value("merged-array-length-max"));
+        assertEquals(10.0, value("dedup-input-elements-total"));
+        assertEquals(6.0, value("dedup-output-elements-total"));
+        assertEquals(0.4, value("dedup-collapse-ratio"), 0.001);
+        assertEquals(1.0, value("skipped-records-total"));
+        assertTrue(Double.isNaN(value("insert-time-avg")));
+    }
+
+    @Test
+    void testDocumentSizeIsSampled() {
+        metrics = new CustomMongoSinkMetrics("conn", "testdb", "orders", Collections.emptyList(), time);
+        // {"_id": "A"}: 4 (length) + 1 (type) + 4 ("_id\0") + 4 (string length) + 2 ("A\0") + 1 (end)
+        BsonDocument document = new BsonDocument("_id", new BsonString("A"));
+
+        for (int i = 0; i < CustomMongoSinkMetrics.DOCUMENT_SIZE_SAMPLING; i++) {
+            metrics.recordInsert(TimeUnit.MILLISECONDS.toNanos(1), document);
+        }
+        metrics.recordReplace(TimeUnit.MILLISECONDS.toNanos(1), document);
+
+        assertEquals((double) CustomMongoSinkMetrics.DOCUMENT_SIZE_SAMPLING, value("insert-time-count"));
+        assertEquals(1.0, value("replace-time-count"));
+        // the first document and the one after DOCUMENT_SIZE_SAMPLING writes
+        assertEquals(2.0, value("document-size-count"));
+        assertEquals(16.0, value("document-size-max"));
+    }
+
+    @Test
+    void testHistogramsAreWindowed() {
+        metrics = new CustomMongoSinkMetrics("conn", "testdb", "orders", Collections.emptyList(), time);
+        metrics.recordFind(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(500.0, value("find-time-p99"), 0.001);
+
+        // default MetricConfig: 2 samples of 30s
+        time.sleep(TimeUnit.SECONDS.toMillis(60));
+        metrics.recordFind(TimeUnit.MILLISECONDS.toNanos(2));
+        assertEquals(1.0, value("find-time-count"));
+        assertEquals(2.0, value("find-time-p99"), 0.001);
+        assertEquals(2.0, value("find-time-max"), 0.001);
+
+        // counters are not windowed
+        metrics.recordSkipped();
+        time.sleep(TimeUnit.SECONDS.toMillis(120));
+        assertEquals(1.0, value("skipped-records-total"));
+        assertEquals(0.0, value("find-time-count"));
+    }
+
+    @Test
+    void testJmxRegistration() throws Exception {
+        metrics = new CustomMongoSinkMetrics("conn", "testdb", "orders");
+
+        ObjectName name = new ObjectName(CustomMongoSinkMetrics.JMX_NAMESPACE
+                + ":type=" + CustomMongoSinkMetrics.GROUP + ",connector=conn,database=testdb,collection=orders");
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+
+        metrics.close();
+        metrics = null;
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    private double value(String name) {
+        for (KafkaMetric metric : metrics.metrics().metrics().values()) {
+            MetricName metricName = metric.metricName();
+            if (metricName.name().equals(name)) {
+                return ((Number) metric.metricValue()).doubleValue();
+            }
+        }
+        throw new IllegalArgumentException("No metric " + name);
+    }
+
+    // time moved by sleep()
+    private static final class ManualTime implements Time {
+        private final AtomicLong millis = new AtomicLong(System.currentTimeMillis());
+
+        @Override
+        public long milliseconds() {
+            return millis.get();
+        }
+
+        @Override
+        public long nanoseconds() {
+            return TimeUnit.MILLISECONDS.toNanos(millis.get());
+        }
+
+        @Override
+        public void sleep(long ms) {
+            millis.addAndGet(ms);
+        }
+
+        @Override
+        public void waitObject(Object obj, Supplier<Boolean> condition, long deadlineMs) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.hifly.kafka.mongo.sink;
+
+import org.apache.kafka.connect.errors.ConnectException;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomMongoSinkTaskTest {
+
+    private static Map<String, String> props(String name, String value) {
+        Map<String, String> props = new HashMap<>();
+        props.put("connection.uri", "mongodb://localhost:27017");
+        props.put("database", "testdb");
+        props.put("collection", "orders");
+        props.put(name, value);
+        return props;
+    }
+
+    @Test
+    void testInvalidPoolSettingsNameTheProperty() {
+        ConnectException notANumber = assertThrows(ConnectException.class,
+                () -> new CustomMongoSinkTask().start(props("connection.pool.max.size", "ten")));
+        assertTrue(notANumber.getMessage().contains("connection.pool.max.size"));
+
+        ConnectException negative = assertThrows(ConnectException.class,
+                () -> new CustomMongoSinkTask().start(props("connection.pool.max.idle.ms", "-1")));
+        assertTrue(negative.getMessage().contains("connection.pool.max.idle.ms"));
+
+        assertThrows(ConnectException.class,
+                () -> new CustomMongoSinkTask().start(props("connection.pool.max.size", "0")));
+        assertThrows(ConnectException.class,
+                () -> new CustomMongoSinkTask().start(props("connection.pool.min.size", "3000000000")));
+    }
+
+    @Test
+    void testPoolSettings() {
+        Map<String, String> props = props("connection.pool.max.idle.ms", " 60000 ");
+        assertEquals(60_000L, CustomMongoSinkTask.longProp(props, "connection.pool.max.idle.ms", 0));
+        assertNull(CustomMongoSinkTask.longProp(props, "connection.pool.min.size", 0));
+    }
+}
@@ -0,0 +1,90 @@
+package org.hifly.kafka.mongo.sink;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongAdderHistogramTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    @Test
+    void testBuckets() {
+        for (long value = 0; value < 4; value++) {
+            assertEquals(value, LongAdderHistogram.bucket(value));
+            assertEquals(value, LongAdderHistogram.upperBound((int) value));
+        }
+        // [4, 8) split in 4 buckets of 1, [8, 16) in 4 buckets of 2
+        assertEquals(4, LongAdderHistogram.bucket(4));
+        assertEquals(7, LongAdderHistogram.bucket(7));
+        assertEquals(8, LongAdderHistogram.bucket(8));
+        assertEquals(8, LongAdderHistogram.bucket(9));
+        assertEquals(9, LongAdderHistogram.bucket(10));
+        assertEquals(9, LongAdderHistogram.upperBound(8));
+        assertEquals(11, LongAdderHistogram.upperBound(9));
+
+        // each value is within its bucket, the bucket is within 25% of the value
+        for (long value = 4; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            int bucket = LongAdderHistogram.bucket(value);
+            long upper = LongAdderHistogram.upperBound(bucket);
+            assertTrue(upper >= value, "value " + value);
+            assertTrue(LongAdderHistogram.upperBound(bucket - 1) < value, "value " + value);
+            assertTrue(upper - value <= value / 4, "value " + value);
+        }
+        assertEquals(Long.MAX_VALUE, LongAdderHistogram.upperBound(LongAdderHistogram.bucket(Long.MAX_VALUE)));
+    }
+
+    @Test
+    void testPercentiles() {
+        LongAdderHistogram histogram = new LongAdderHistogram(30_000, 2, clock::get);
+        assertEquals(0, histogram.count());
+        assertTrue(Double.isNaN(histogram.mean()));
+        assertTrue(Double.isNaN(histogram.percentile(50)));
+
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        histogram.record(-5);
+
+        assertEquals(101, histogram.count());
+        assertEquals(5050, histogram.sum());
+        assertEquals(100, histogram.max());
+        assertEquals(50.0, histogram.mean(), 0.001);
+        // upper bound of the bucket of the value at the rank
+        assertEquals(55.0, histogram.percentile(50));
+        assertEquals(95.0, histogram.percentile(95));
+        assertEquals(100.0, histogram.percentile(99));
+        assertEquals(100.0, histogram.percentile(100));
+        assertEquals(0.0, histogram.percentile(0.5));
+    }
+
+    @Test
+    void testWindow() {
+        LongAdderHistogram histogram = new LongAdderHistogram(1000, 2, clock::get);
+        histogram.record(1000);
+
+        // next sample: both are read
+        clock.addAndGet(1000);
+        histogram.record(10);
+        assertEquals(2, histogram.count());
+        assertEquals(1000, histogram.max());
+
+        // the first sample is over 2 windows old, reused by the next values
+        clock.addAndGet(1000);
+        assertEquals(1, histogram.count());
+        assertEquals(10, histogram.max());
+        histogram.record(20);
+        assertEquals(2, histogram.count());
+        assertEquals(20.0, histogram.percentile(99));
+
+        // nothing recorded in the last 2 windows
+        clock.addAndGet(5000);
+        assertEquals(0, histogram.count());
+        assertTrue(Double.isNaN(histogram.percentile(50)));
+        histogram.record(7);
+        assertEquals(1, histogram.count());
+        assertEquals(7.0, histogram.mean(), 0.001);
+    }
+}
@@ -0,0 +1,413 @@
+package org.hifly.kafka.mongo.source;
+
+import org.apache.kafka.connect.data.Decimal;
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.data.Timestamp;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Connect schema inferred from the documents of a collection, for output.format=avro with avro.schema.mode=inferred.
+ *
+ * The schema evolves as documents are read: new fields are added (all fields are optional) and types are widened
+ * (int32 to int64 to float64, decimal scale increased, any other conflict to string). Each change is a new schema version.
+ * Documents that fit the current schema are converted without inferring anything.
+ *
+ * BSON types: Decimal128 as Decimal, date as Timestamp, ObjectId as a string named OBJECT_ID_SCHEMA_NAME,
+ * binary as bytes, BSON timestamp as int64, embedded documents as Struct and arrays as Array.
+ * Null values and empty arrays carry no type: the field is only added once a typed value is seen.
+ * Field names are made valid Avro names as the record name ("order-id" is order_id, "1st" is _1st): Mongo fields
+ * whose names only differ by such characters share a field, holding the last non null value of the document.
+ * This class is not thread safe, each task has its own instance for its collection.
+ */
+public class BsonSchemaInference {
+
+    public static final String OBJECT_ID_SCHEMA_NAME = "org.hifly.kafka.mongo.ObjectId";
+
+    private static final Schema OPTIONAL_OBJECT_ID_SCHEMA = SchemaBuilder.string().name(OBJECT_ID_SCHEMA_NAME).optional().build();
+    private static final Schema OPTIONAL_TIMESTAMP_SCHEMA = Timestamp.builder().optional().build();
+
+    private final String recordName;
+
+    // unnamed struct used to check and merge documents, published with name and version
+    private Schema current;
+    private Schema published;
+    private int version;
+
+    public BsonSchemaInference(String recordName) {
+        this.recordName = recordName;
+    }
+
+    /*
+     Current schema, evolved first if the document does not fit it
+     */
+    public Schema schema(Document doc) {
+        if (current != null && fits(current, doc)) {
+            return published;
+        }
+        Schema merged = merge(current, infer(doc));
+        if (!merged.equals(current)) {
+            current = merged;
+            version++;
+            published = publish(merged);
+        }
+        return published;
+    }
+
+    public int version() {
+        return version;
+    }
+
+    public Struct toStruct(Document doc, Schema schema) {
+        return (Struct) convert(doc, schema);
+    }
+
+    /*
+     Avro record names: letters, digits and _ only
+     */
+    public static String recordName(String database, String collection) {
+        return "org.hifly.kafka.mongo." + sanitize(database) + "." + sanitize(collection);
+    }
+
+    /*
+     Avro field name of a Mongo field, the name itself when it is already valid
+     */
+    static String fieldName(Object key) {
+        String name = String.valueOf(key);
+        if (name.isEmpty() || Character.isDigit(name.charAt(0))) {
+            return sanitize(name);
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_')) {
+                return sanitize(name);
+            }
+        }
+        return name;
+    }
+
+    private static String sanitize(String name) {
+        StringBuilder sb = new StringBuilder(name.length() + 1);
+        if (name.isEmpty() || Character.isDigit(name.charAt(0))) {
+            sb.append('_');
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            sb.append((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    private Schema publish(Schema struct) {
+        SchemaBuilder builder = SchemaBuilder.struct().name(recordName).version(version);
+        for (Field field : struct.fields()) {
+            builder.field(field.name(), field.schema());
+        }
+        return builder.build();
+    }
+
+    /*
+     Schema of a value, null when the value carries no type (null, empty array, array of nulls)
+     */
+    private static Schema infer(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof String) {
+            return Schema.OPTIONAL_STRING_SCHEMA;
+        }
+        if (value instanceof Integer) {
+            return Schema.OPTIONAL_INT32_SCHEMA;
+        }
+        if (value instanceof Long || value instanceof BsonTimestamp) {
+            return Schema.OPTIONAL_INT64_SCHEMA;
+        }
+        if (value instanceof Double) {
+            return Schema.OPTIONAL_FLOAT64_SCHEMA;
+        }
+        if (value instanceof Boolean) {
+            return Schema.OPTIONAL_BOOLEAN_SCHEMA;
+        }
+        if (value instanceof Date) {
+            return OPTIONAL_TIMESTAMP_SCHEMA;
+        }
+        if (value instanceof ObjectId) {
+            return OPTIONAL_OBJECT_ID_SCHEMA;
+        }
+        if (value instanceof Decimal128) {
+            Decimal128 decimal = (Decimal128) value;
+            return isFinite(decimal) ? Decimal.builder(scale(decimal)).optional().build() : null;
+        }
+        if (value instanceof Binary || value instanceof byte[]) {
+            return Schema.OPTIONAL_BYTES_SCHEMA;
+        }
+        if (value instanceof Map) {
+            // Mongo fields sharing a field name are merged
+            Map<String, Schema> fields = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                Schema schema = infer(entry.getValue());
+                if (schema != null) {
+                    fields.merge(fieldName(entry.getKey()), schema, BsonSchemaInference::merge);
+                }
+            }
+            SchemaBuilder builder = SchemaBuilder.struct().optional();
+            fields.forEach(builder::field);
+            return builder.build();
+        }
+        if (value instanceof List) {
+            Schema elements = null;
+            for (Object element : (List<?>) value) {
+                elements = merge(elements, infer(element));
+            }
+            return elements == null ? null : SchemaBuilder.array(elements).optional().build();
+        }
+        return Schema.OPTIONAL_STRING_SCHEMA;
+    }
+
+    /*
+     Smallest schema both a and b fit, null for unknown
+     */
+    private static Schema merge(Schema a, Schema b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null || a.equals(b)) {
+            return a;
+        }
+
+        if (a.type() == Schema.Type.STRUCT && b.type() == Schema.Type.STRUCT) {
+            SchemaBuilder builder = SchemaBuilder.struct().optional();
+            for (Field field : a.fields()) {
+                Field other = b.field(field.name());
+                builder.field(field.name(), other == null ? field.schema() : merge(field.schema(), other.schema()));
+            }
+            for (Field field : b.fields()) {
+                if (a.field(field.name()) == null) {
+                    builder.field(field.name(), field.schema());
+                }
+            }
+            return builder.build();
+        }
+        if (a.type() == Schema.Type.ARRAY && b.type() == Schema.Type.ARRAY) {
+            return SchemaBuilder.array(merge(a.valueSchema(), b.valueSchema())).optional().build();
+        }
+
+        boolean aDecimal = Decimal.LOGICAL_NAME.equals(a.name());
+        boolean bDecimal = Decimal.LOGICAL_NAME.equals(b.name());
+        if (aDecimal && bDecimal) {
+            return Decimal.builder(Math.max(decimalScale(a), decimalScale(b))).optional().build();
+        }
+        if (aDecimal && isInteger(b)) {
+            return a;
+        }
+        if (bDecimal && isInteger(a)) {
+            return b;
+        }
+        if ((aDecimal && b.type() == Schema.Type.FLOAT64) || (bDecimal && a.type() == Schema.Type.FLOAT64)) {
+            return Schema.OPTIONAL_FLOAT64_SCHEMA;
+        }
+        if (isNumber(a) && isNumber(b)) {
+            return a.type().ordinal() > b.type().ordinal() ? a : b;
+        }
+        return Schema.OPTIONAL_STRING_SCHEMA;
+    }
+
+    /*
+     Same answer as merge(schema, infer(value)).equals(schema), without allocation
+     */
+    private static boolean fits(Schema schema, Object value) {
+        if (value == null) {
+            return true;
+        }
+        Schema.Type type = schema.type();
+        String name = schema.name();
+        if (type == Schema.Type.STRING && name == null) {
+            return true;
+        }
+        if (Decimal.LOGICAL_NAME.equals(name)) {
+            if (value instanceof Decimal128) {
+                Decimal128 decimal = (Decimal128) value;
+                return !isFinite(decimal) || scale(decimal) <= decimalScale(schema);
+            }
+            return value instanceof Integer || value instanceof Long;
+        }
+        if (value instanceof Integer) {
+            return name == null && (type == Schema.Type.INT32 || type == Schema.Type.INT64 || type == Schema.Type.FLOAT64);
+        }
+        if (value instanceof Long || value instanceof BsonTimestamp) {
+            return name == null && (type == Schema.Type.INT64 || type == Schema.Type.FLOAT64);
+        }
+        if (value instanceof Double) {
+            return name == null && type == Schema.Type.FLOAT64;
+        }
+        if (value instanceof Decimal128) {
+            return (name == null && type == Schema.Type.FLOAT64) || !isFinite((Decimal128) value);
+        }
+        if (value instanceof Boolean) {
+            return type == Schema.Type.BOOLEAN;
+        }
+        if (value instanceof Date) {
+            return Timestamp.LOGICAL_NAME.equals(name);
+        }
+        if (value instanceof ObjectId) {
+            return OBJECT_ID_SCHEMA_NAME.equals(name);
+        }
+        if (value instanceof Binary || value instanceof byte[]) {
+            return type == Schema.Type.BYTES && name == null;
+        }
+        if (value instanceof Map) {
+            if (type != Schema.Type.STRUCT) {
+                return isUntyped(value);
+            }
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                Field field = schema.field(fieldName(entry.getKey()));
+                if (field == null ? !isUntyped(entry.getValue()) : !fits(field.schema(), entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (value instanceof List) {
+            if (type != Schema.Type.ARRAY) {
+                return isUntyped(value);
+            }
+            for (Object element : (List<?>) value) {
+                if (!fits(schema.valueSchema(), element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isUntyped(Object value) {
+        if (value == null) {
+            return true;
+        }
+        if (value instanceof Decimal128) {
+            return !isFinite((Decimal128) value);
+        }
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (!isUntyped(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static Object convert(Object value, Schema schema) {
+        if (value == null) {
+            return null;
+        }
+        String name = schema.name();
+        if (Decimal.LOGICAL_NAME.equals(name)) {
+            return decimal(value, decimalScale(schema));
+        }
+        if (Timestamp.LOGICAL_NAME.equals(name)) {
+            return value;
+        }
+        if (OBJECT_ID_SCHEMA_NAME.equals(name)) {
+            return ((ObjectId) value).toHexString();
+        }
+        switch (schema.type()) {
+            case STRING:
+                return value instanceof String ? value : json(value);
+            case INT32:
+                return value;
+            case INT64:
+                return value instanceof BsonTimestamp ? ((BsonTimestamp) value).getValue() : ((Number) value).longValue();
+            case FLOAT64:
+                return value instanceof BsonTimestamp ? (double) ((BsonTimestamp) value).getValue() : ((Number) value).doubleValue();
+            case BOOLEAN:
+                return value;
+            case BYTES:
+                return value instanceof Binary ? ((Binary) value).getData() : value;
+            case STRUCT:
+                Struct struct = new Struct(schema);
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    Field field = schema.field(fieldName(entry.getKey()));
+                    if (field != null && entry.getValue() != null) {
+                        struct.put(field, convert(entry.getValue(), field.schema()));
+                    }
+                }
+                return struct;
+            case ARRAY:
+                List<?> list = (List<?>) value;
+                List<Object> converted = new ArrayList<>(list.size());
+                for (Object element : list) {
+                    converted.add(convert(element, schema.valueSchema()));
+                }
+                return converted;
+            default:
+                return json(value);
+        }
+    }
+
+    private static BigDecimal decimal(Object value, int scale) {
+        if (value instanceof Decimal128) {
+            Decimal128 decimal = (Decimal128) value;
+            return isFinite(decimal) ? bigDecimal(decimal).setScale(scale) : null;
+        }
+        return BigDecimal.valueOf(((Number) value).longValue()).setScale(scale);
+    }
+
+    /*
+     Relaxed extended JSON of a value, as in Document.toJson()
+     */
+    private static String json(Object value) {
+        if (value instanceof Document) {
+            return ((Document) value).toJson();
+        }
+        String json = new Document("v", value).toJson();
+        return json.substring(6, json.length() - 1);
+    }
+
+    private static boolean isFinite(Decimal128 decimal) {
+        return !decimal.isNaN() && !decimal.isInfinite();
+    }
+
+    private static int scale(Decimal128 decimal) {
+        return Math.max(0, bigDecimal(decimal).scale());
+    }
+
+    /*
+     Value of a finite Decimal128, 0 with its scale for negative zero, which bigDecimalValue() rejects
+     */
+    static BigDecimal bigDecimal(Decimal128 decimal) {
+        try {
+            return decimal.bigDecimalValue();
+        } catch (ArithmeticException e) {
+            return new BigDecimal(decimal.toString());
+        }
+    }
+
+    private static int decimalScale(Schema schema) {
+        return Integer.parseInt(Objects.toString(schema.parameters().get(Decimal.SCALE_FIELD)));
+    }
+
+    private static boolean isInteger(Schema schema) {
+        return schema.name() == null && (schema.type() == Schema.Type.INT32 || schema.type() == Schema.Type.INT64);
+    }
+
+    private static boolean isNumber(Schema schema) {
+        return isInteger(schema) || (schema.name() == null && schema.type() == Schema.Type.FLOAT64);
+    }
+}
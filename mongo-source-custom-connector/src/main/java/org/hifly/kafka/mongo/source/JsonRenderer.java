@@ -0,0 +1,251 @@
+package org.hifly.kafka.mongo.source;
+
+import org.bson.Document;
+import org.bson.UuidRepresentation;
+import org.bson.codecs.BsonValueCodecProvider;
+import org.bson.codecs.CollectionCodecProvider;
+import org.bson.codecs.DocumentCodecProvider;
+import org.bson.codecs.Encoder;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.IterableCodecProvider;
+import org.bson.codecs.MapCodecProvider;
+import org.bson.codecs.ValueCodecProvider;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriter;
+import org.bson.json.JsonWriterSettings;
+
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+
+/**
+ * Renders documents as JSON into buffers reused across documents. Not thread safe: one renderer per thread.
+ *
+ * Modes:
+ * - relaxed: as Document.toJson()
+ * - extended: canonical extended JSON, types kept ({"$numberLong": "1"}, {"$date": {"$numberLong": "1"}})
+ * - plain: no $-wrappers. ObjectId as hex string, dates and timestamps as epoch millis, decimals as numbers,
+ *   binary as base64 string
+ *
+ * toJsonBytes() encodes UTF-8 while rendering, without an intermediate String.
+ */
+public class JsonRenderer {
+
+    public enum Mode { RELAXED, EXTENDED, PLAIN }
+
+    // same codecs as Document.toJson()
+    private static final Encoder<Document> ENCODER = CodecRegistries.withUuidRepresentation(
+            CodecRegistries.fromProviders(new ValueCodecProvider(), new CollectionCodecProvider(),
+                    new IterableCodecProvider(), new BsonValueCodecProvider(), new DocumentCodecProvider(),
+                    new MapCodecProvider()),
+            UuidRepresentation.STANDARD).get(Document.class);
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // a buffer grown over this by a large document is dropped after use
+    private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+    private final JsonWriterSettings settings;
+    private StringBuilderWriter chars = new StringBuilderWriter();
+    private Utf8Writer bytes = new Utf8Writer();
+
+    public JsonRenderer(Mode mode) {
+        this.settings = settings(mode);
+    }
+
+    public static Mode mode(String mode) {
+        return Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+    }
+
+    public String toJson(Document doc) {
+        try {
+            render(doc, chars);
+            return chars.builder.toString();
+        } finally {
+            if (chars.builder.capacity() > MAX_RETAINED_CAPACITY) {
+                chars = new StringBuilderWriter();
+            } else {
+                chars.builder.setLength(0);
+            }
+        }
+    }
+
+    public byte[] toJsonBytes(Document doc) {
+        try {
+            render(doc, bytes);
+            bytes.flush();
+            return Arrays.copyOf(bytes.buffer, bytes.length);
+        } finally {
+            if (bytes.buffer.length > MAX_RETAINED_CAPACITY) {
+                bytes = new Utf8Writer();
+            } else {
+                bytes.reset();
+            }
+        }
+    }
+
+    private void render(Document doc, Writer writer) {
+        ENCODER.encode(new JsonWriter(writer, settings), doc, ENCODER_CONTEXT);
+    }
+
+    static JsonWriterSettings settings(Mode mode) {
+        switch (mode) {
+            case EXTENDED:
+                return JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+            case PLAIN:
+                return JsonWriterSettings.builder()
+                        .outputMode(JsonMode.RELAXED)
+                        .objectIdConverter((value, writer) -> writer.writeString(value.toHexString()))
+                        .dateTimeConverter((value, writer) -> writer.writeNumber(Long.toString(value)))
+                        .timestampConverter((value, writer) -> writer.writeNumber(Long.toString(value.getTime() * 1000L)))
+                        .decimal128Converter((value, writer) -> {
+                            if (value.isNaN() || value.isInfinite()) {
+                                writer.writeString(value.toString());
+                            } else {
+                                writer.writeNumber(value.toString());
+                            }
+                        })
+                        .binaryConverter((value, writer) -> writer.writeString(Base64.getEncoder().encodeToString(value.getData())))
+                        .regularExpressionConverter((value, writer) -> writer.writeString(value.getPattern()))
+                        .symbolConverter((value, writer) -> writer.writeString(value))
+                        .javaScriptConverter((value, writer) -> writer.writeString(value))
+                        .undefinedConverter((value, writer) -> writer.writeNull())
+                        .build();
+            default:
+                return JsonWriterSettings.builder().outputMode(JsonMode.RELAXED).build();
+        }
+    }
+
+    private static final class StringBuilderWriter extends Writer {
+        private final StringBuilder builder = new StringBuilder(INITIAL_CAPACITY);
+
+        @Override
+        public void write(int c) {
+            builder.append((char) c);
+        }
+
+        @Override
+        public void write(String str) {
+            builder.append(str);
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            builder.append(str, off, off + len);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            builder.append(cbuf, off, len);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /*
+     UTF-8 encoding Writer over a growable byte array. A surrogate pair can span two writes
+     */
+    private static final class Utf8Writer extends Writer {
+        private byte[] buffer = new byte[INITIAL_CAPACITY];
+        private int length;
+        private char highSurrogate;
+
+        private void reset() {
+            length = 0;
+            highSurrogate = 0;
+        }
+
+        @Override
+        public void write(int c) {
+            writeChar((char) c);
+        }
+
+        @Override
+        public void write(String str) {
+            write(str, 0, str.length());
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                writeChar(str.charAt(i));
+            }
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                writeChar(cbuf[i]);
+            }
+        }
+
+        private void writeChar(char c) {
+            if (c < 0x80 && highSurrogate == 0) {
+                if (length == buffer.length) {
+                    ensureCapacity(1);
+                }
+                buffer[length++] = (byte) c;
+                return;
+            }
+            // 4 bytes per surrogate pair, 3 per char otherwise
+            ensureCapacity(4);
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    int codePoint = Character.toCodePoint(high, c);
+                    buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+                    return;
+                }
+                // unpaired: replaced as String.getBytes(UTF_8) does
+                buffer[length++] = '?';
+                writeChar(c);
+                return;
+            }
+            if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xC0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                buffer[length++] = '?';
+            } else {
+                buffer[length++] = (byte) (0xE0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        private void ensureCapacity(int bytes) {
+            if (length + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(length + bytes, 2 * buffer.length));
+            }
+        }
+
+        @Override
+        public void flush() {
+            if (highSurrogate != 0) {
+                highSurrogate = 0;
+                ensureCapacity(1);
+                buffer[length++] = '?';
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.hifly.kafka.mongo.source;
+
+import com.mongodb.client.model.Filters;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Backfill of a MongoQuerySourceTask: the documents up to the time field of the last one at start are split
+ * in time slices on time.field, read concurrently by one thread per slice into a PrefetchQueue per slice.
+ *
+ * drain() returns the records slice after slice: they keep the (time.field, _id) order, so the position of each
+ * record is where the task resumes, as for the incremental polls.
+ * Slices are split on Date, integer, double and BSON Timestamp time fields.
+ */
+public class MongoBackfill implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoBackfill.class);
+
+    private static final long STOP_TIMEOUT_MS = 5000L;
+
+    /**
+     * Reads the documents of a slice into queue until the cursor ends or the queue is closed.
+     */
+    interface SliceReader {
+        // position of the last document put, null if none
+        MongoQueryOffset read(Bson range, PrefetchQueue queue) throws InterruptedException;
+    }
+
+    private final List<Slice> slices;
+    private int current;
+
+    public MongoBackfill(List<Bson> ranges, int queueMaxRecords, long queueMaxBytes, SliceReader reader, String name) {
+        this.slices = new ArrayList<>(ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            Slice slice = new Slice(new PrefetchQueue(queueMaxRecords, queueMaxBytes));
+            Bson range = ranges.get(i);
+            int index = i;
+            slice.thread = new Thread(() -> {
+                try {
+                    slice.last = reader.read(range, slice.queue);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    log.error("Backfill of slice {} failed: {}", index, e.getMessage(), e);
+                    slice.error = e;
+                } finally {
+                    slice.finished = true;
+                    slice.queue.close();
+                }
+            }, name + "-" + i);
+            slice.thread.setDaemon(true);
+            slices.add(slice);
+        }
+        for (Slice slice : slices) {
+            slice.thread.start();
+        }
+    }
+
+    /*
+     Up to max records of the current slice, waits up to timeoutMs for them. Empty when done()
+     */
+    public List<SourceRecord> drain(int max, long timeoutMs) throws InterruptedException {
+        while (current < slices.size()) {
+            Slice slice = slices.get(current);
+            // read before draining: the records put before the end are in the queue
+            boolean finished = slice.finished;
+            List<SourceRecord> records = slice.queue.drain(max, finished ? 0L : timeoutMs);
+            if (!records.isEmpty()) {
+                return records;
+            }
+            if (slice.error != null) {
+                throw new ConnectException("Backfill of slice " + current + " failed", slice.error);
+            }
+            if (!finished) {
+                return records;
+            }
+            current++;
+        }
+        return Collections.emptyList();
+    }
+
+    // all the slices returned
+    public boolean done() {
+        return current == slices.size();
+    }
+
+    // position of the last record of the backfill, null if it had no records
+    public MongoQueryOffset lastPosition() {
+        for (int i = slices.size() - 1; i >= 0; i--) {
+            if (slices.get(i).last != null) {
+                return slices.get(i).last;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        for (Slice slice : slices) {
+            slice.queue.close();
+            slice.thread.interrupt();
+        }
+        for (Slice slice : slices) {
+            try {
+                slice.thread.join(STOP_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /*
+     Time ranges of the slices, after from (null on first run) up to end included, empty when the range can't be split.
+     first: lowest time field, used when from has none. The first slice of a first run also has the documents
+     without time field, read first by the incremental polls too
+     */
+    static List<Bson> ranges(String timeField, MongoQueryOffset from, Object first, Object end, int slices) {
+        if (end == null || slices < 2) {
+            return Collections.emptyList();
+        }
+        Object lower = from != null && from.ts() != null ? from.ts() : first;
+        List<Object> bounds = boundaries(lower, end, slices);
+        if (bounds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Bson> ranges = new ArrayList<>(bounds.size() + 1);
+        for (int i = 0; i <= bounds.size(); i++) {
+            Bson upper = i < bounds.size() ? Filters.lt(timeField, bounds.get(i)) : Filters.lte(timeField, end);
+            if (i > 0) {
+                ranges.add(Filters.and(Filters.gte(timeField, bounds.get(i - 1)), upper));
+            } else if (from != null) {
+                ranges.add(Filters.and(from.filter(timeField), upper));
+            } else {
+                ranges.add(Filters.or(Filters.eq(timeField, null), upper));
+            }
+        }
+        return ranges;
+    }
+
+    /*
+     Up to slices - 1 increasing values between lower (excluded) and end, empty if lower and end are not
+     of the same sliceable type
+     */
+    static List<Object> boundaries(Object lower, Object end, int slices) {
+        Kind kind = kind(lower);
+        if (kind == null || kind != kind(end)) {
+            return Collections.emptyList();
+        }
+        double from = number(lower);
+        double to = number(end);
+        List<Object> bounds = new ArrayList<>(slices - 1);
+        double previous = from;
+        for (int i = 1; i < slices; i++) {
+            double bound = from + (to - from) * i / slices;
+            if (kind != Kind.DOUBLE) {
+                bound = Math.floor(bound);
+            }
+            if (bound > previous && bound <= to) {
+                bounds.add(value(kind, bound));
+                previous = bound;
+            }
+        }
+        return bounds;
+    }
+
+    private enum Kind { DATE, LONG, DOUBLE, TIMESTAMP }
+
+    private static Kind kind(Object value) {
+        if (value instanceof BsonValue) {
+            BsonValue bson = (BsonValue) value;
+            switch (bson.getBsonType()) {
+                case DATE_TIME:
+                    return Kind.DATE;
+                case INT32:
+                case INT64:
+                    return Kind.LONG;
+                case DOUBLE:
+                    return Kind.DOUBLE;
+                case TIMESTAMP:
+                    return Kind.TIMESTAMP;
+                default:
+                    return null;
+            }
+        }
+        if (value instanceof Date) {
+            return Kind.DATE;
+        }
+        if (value instanceof Long || value instanceof Integer) {
+            return Kind.LONG;
+        }
+        if (value instanceof Double) {
+            return Kind.DOUBLE;
+        }
+        return null;
+    }
+
+    private static double number(Object value) {
+        if (value instanceof BsonValue) {
+            BsonValue bson = (BsonValue) value;
+            switch (bson.getBsonType()) {
+                case DATE_TIME:
+                    return bson.asDateTime().getValue();
+                case TIMESTAMP:
+                    return Integer.toUnsignedLong(bson.asTimestamp().getTime());
+                default:
+                    return bson.asNumber().doubleValue();
+            }
+        }
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    private static Object value(Kind kind, double number) {
+        switch (kind) {
+            case DATE:
+                return new Date((long) number);
+            case LONG:
+                return (long) number;
+            case TIMESTAMP:
+                return new BsonTimestamp((int) (long) number, 0);
+            default:
+                return number;
+        }
+    }
+
+    private static final class Slice {
+        private final PrefetchQueue queue;
+        private Thread thread;
+        private volatile MongoQueryOffset last;
+        private volatile RuntimeException error;
+        private volatile boolean finished;
+
+        private Slice(PrefetchQueue queue) {
+            this.queue = queue;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.hifly.kafka.mongo.source;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MongoClients shared by the tasks of a worker: one client (connection pool, monitor threads) per connection string
+ * and pool settings.
+ *
+ * acquire() returns a Lease, the client is closed when its last Lease is closed.
+ * Command events go to the CommandListener bound to the thread running the command (bindCommandListener()):
+ * the sync driver reports them on that thread, so each task only sees its own commands.
+ */
+public final class MongoClientRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoClientRegistry.class);
+
+    private static final Map<String, Entry> CLIENTS = new HashMap<>();
+    private static final ThreadLocal<CommandListener> LISTENER = new ThreadLocal<>();
+
+    private static final CommandListener THREAD_LISTENER = new CommandListener() {
+        @Override
+        public void commandStarted(CommandStartedEvent event) {
+            CommandListener listener = LISTENER.get();
+            if (listener != null) {
+                listener.commandStarted(event);
+            }
+        }
+
+        @Override
+        public void commandSucceeded(CommandSucceededEvent event) {
+            CommandListener listener = LISTENER.get();
+            if (listener != null) {
+                listener.commandSucceeded(event);
+            }
+        }
+
+        @Override
+        public void commandFailed(CommandFailedEvent event) {
+            CommandListener listener = LISTENER.get();
+            if (listener != null) {
+                listener.commandFailed(event);
+            }
+        }
+    };
+
+    private MongoClientRegistry() {
+    }
+
+    /*
+     Pool settings not null override the ones of the connection string
+     */
+    public static Lease acquire(ConnectionString connectionString, Integer maxPoolSize, Integer minPoolSize,
+                                Long maxIdleMs) {
+        String key = connectionString.getConnectionString() + '|' + maxPoolSize + '|' + minPoolSize + '|' + maxIdleMs;
+        synchronized (CLIENTS) {
+            Entry entry = CLIENTS.get(key);
+            if (entry == null) {
+                MongoClientSettings settings = MongoClientSettings.builder()
+                        .applyConnectionString(connectionString)
+                        .applyToConnectionPoolSettings(pool -> {
+                            if (maxPoolSize != null) {
+                                pool.maxSize(maxPoolSize);
+                            }
+                            if (minPoolSize != null) {
+                                pool.minSize(minPoolSize);
+                            }
+                            if (maxIdleMs != null) {
+                                pool.maxConnectionIdleTime(maxIdleMs, TimeUnit.MILLISECONDS);
+                            }
+                        })
+                        .addCommandListener(THREAD_LISTENER)
+                        .build();
+                entry = new Entry(key, MongoClients.create(settings));
+                CLIENTS.put(key, entry);
+                log.info("Created shared MongoClient for {} (max pool size {})", connectionString.getHosts(),
+                        settings.getConnectionPoolSettings().getMaxSize());
+            }
+            entry.references++;
+            return new Lease(entry);
+        }
+    }
+
+    /*
+     Command events of the current thread go to listener, until unbindCommandListener()
+     */
+    public static void bindCommandListener(CommandListener listener) {
+        LISTENER.set(Objects.requireNonNull(listener));
+    }
+
+    public static void unbindCommandListener() {
+        LISTENER.remove();
+    }
+
+    static int size() {
+        synchronized (CLIENTS) {
+            return CLIENTS.size();
+        }
+    }
+
+    private static void release(Entry entry) {
+        synchronized (CLIENTS) {
+            if (--entry.references > 0) {
+                return;
+            }
+            CLIENTS.remove(entry.key);
+        }
+        log.info("Closing shared MongoClient, no tasks left");
+        entry.client.close();
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final MongoClient client;
+        private int references;
+
+        private Entry(String key, MongoClient client) {
+            this.key = key;
+            this.client = client;
+        }
+    }
+
+    /**
+     * A reference to a shared client, closed once.
+     */
+    public static final class Lease implements AutoCloseable {
+
+        private Entry entry;
+
+        private Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        public synchronized MongoClient client() {
+            if (entry == null) {
+                throw new IllegalStateException("MongoClient lease already closed");
+            }
+            return entry.client;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (entry != null) {
+                release(entry);
+                entry = null;
+            }
+        }
+    }
+}
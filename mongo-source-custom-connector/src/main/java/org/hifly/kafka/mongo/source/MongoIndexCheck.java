@@ -0,0 +1,190 @@
+package org.hifly.kafka.mongo.source;
+
+import com.mongodb.ExplainVerbosity;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoIterable;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Explains the query of a MongoQuerySourceTask at start and looks for full collection scans (COLLSCAN)
+ * and blocking sorts (SORT stage, $sort stage of a pipeline) in the winning plan.
+ *
+ * index.check:
+ * - off: no explain
+ * - warn: log the problems and the index to create
+ * - fail: the task does not start
+ * - create: create the index, explain again and warn if problems are left (for example a $sort after a $lookup)
+ *
+ * The index follows the equality, sort, range order: equality fields of mongo.base.filter, time.field, _id,
+ * then the other mongo.base.filter fields.
+ */
+public class MongoIndexCheck {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoIndexCheck.class);
+
+    public enum Mode { OFF, WARN, FAIL, CREATE }
+
+    private final Mode mode;
+
+    public MongoIndexCheck(Mode mode) {
+        this.mode = mode;
+    }
+
+    public static Mode mode(String mode) {
+        return Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+    }
+
+    public void check(MongoCollection<Document> collection, MongoQueryPlan plan, MongoQueryOffset position) {
+        if (mode == Mode.OFF) {
+            return;
+        }
+        String namespace = collection.getNamespace().getFullName();
+        List<String> problems;
+        try {
+            problems = problems(explain(plan.query(collection, Document.class, position)));
+        } catch (RuntimeException e) {
+            log.warn("index.check: can't explain the query on {}: {}", namespace, e.getMessage());
+            return;
+        }
+        if (problems.isEmpty()) {
+            log.info("index.check: the query on {} uses an index", namespace);
+            return;
+        }
+
+        BsonDocument keys = indexKeys(plan.timeField(), plan.filter());
+        String message = "index.check: the query on " + namespace + " " + String.join(", ", problems)
+                + ". Suggested index: " + keys.toJson();
+        switch (mode) {
+            case FAIL:
+                throw new ConnectException(message);
+            case CREATE:
+                log.warn("{}. Creating it", message);
+                String name = collection.createIndex(keys);
+                List<String> left = problems(explain(plan.query(collection, Document.class, position)));
+                if (left.isEmpty()) {
+                    log.info("index.check: created index {} on {}, the query uses it", name, namespace);
+                } else {
+                    log.warn("index.check: created index {} on {}, the query still {}", name, namespace,
+                            String.join(", ", left));
+                }
+                break;
+            default:
+                log.warn(message);
+        }
+    }
+
+    private static Document explain(MongoIterable<Document> query) {
+        if (query instanceof FindIterable) {
+            return ((FindIterable<Document>) query).explain(ExplainVerbosity.QUERY_PLANNER);
+        }
+        if (query instanceof AggregateIterable) {
+            return ((AggregateIterable<Document>) query).explain(ExplainVerbosity.QUERY_PLANNER);
+        }
+        throw new IllegalArgumentException("unsupported query " + query.getClass().getName());
+    }
+
+    /*
+     COLLSCAN / SORT stages of the winning plans (also per shard, and in the $cursor stage of a pipeline)
+     and $sort stages left in a pipeline
+     */
+    static List<String> problems(Document explain) {
+        List<String> problems = new ArrayList<>();
+        BsonDocument document = explain.toBsonDocument();
+        collectPlanProblems(document, false, problems);
+        BsonValue stages = document.get("stages");
+        if (stages != null && stages.isArray()) {
+            for (BsonValue stage : stages.asArray()) {
+                if (stage.isDocument() && stage.asDocument().containsKey("$sort")) {
+                    addOnce(problems, "sorts the pipeline output in memory ($sort stage)");
+                }
+            }
+        }
+        return problems;
+    }
+
+    private static void collectPlanProblems(BsonValue value, boolean inWinningPlan, List<String> problems) {
+        if (value.isArray()) {
+            for (BsonValue item : value.asArray()) {
+                collectPlanProblems(item, inWinningPlan, problems);
+            }
+            return;
+        }
+        if (!value.isDocument()) {
+            return;
+        }
+        for (Map.Entry<String, BsonValue> entry : value.asDocument().entrySet()) {
+            String key = entry.getKey();
+            BsonValue child = entry.getValue();
+            if ("rejectedPlans".equals(key)) {
+                continue;
+            }
+            if (inWinningPlan && "stage".equals(key) && child.isString()) {
+                String stage = child.asString().getValue();
+                if ("COLLSCAN".equals(stage)) {
+                    addOnce(problems, "scans the whole collection (COLLSCAN)");
+                } else if ("SORT".equals(stage)) {
+                    addOnce(problems, "sorts in memory (SORT)");
+                }
+            }
+            collectPlanProblems(child, inWinningPlan || "winningPlan".equals(key), problems);
+        }
+    }
+
+    private static void addOnce(List<String> problems, String problem) {
+        if (!problems.contains(problem)) {
+            problems.add(problem);
+        }
+    }
+
+    /*
+     Equality fields of the filter, time field and _id, other fields of the filter
+     */
+    static BsonDocument indexKeys(String timeField, BsonDocument filter) {
+        BsonDocument keys = new BsonDocument();
+        List<String> rangeFields = new ArrayList<>();
+        if (filter != null) {
+            for (Map.Entry<String, BsonValue> entry : filter.entrySet()) {
+                String field = entry.getKey();
+                if (field.startsWith("$") || field.equals(timeField) || field.equals("_id")) {
+                    continue;
+                }
+                if (isEquality(entry.getValue())) {
+                    keys.put(field, new BsonInt32(1));
+                } else {
+                    rangeFields.add(field);
+                }
+            }
+        }
+        keys.put(timeField, new BsonInt32(1));
+        keys.put("_id", new BsonInt32(1));
+        for (String field : rangeFields) {
+            keys.put(field, new BsonInt32(1));
+        }
+        return keys;
+    }
+
+    // a value or {$eq: value}, not an operator document
+    private static boolean isEquality(BsonValue value) {
+        if (!value.isDocument() || value.asDocument().isEmpty()) {
+            return true;
+        }
+        BsonDocument document = value.asDocument();
+        if (document.size() == 1 && document.containsKey("$eq")) {
+            return true;
+        }
+        return !document.getFirstKey().startsWith("$");
+    }
+}
@@ -0,0 +1,326 @@
+package org.hifly.kafka.mongo.source;
+
+import com.mongodb.client.MongoCollection;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.types.Decimal128;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * $lookup done by the task: the lookup collections are loaded in memory, hashed on foreignField, and joined
+ * to the documents read from Mongo.
+ *
+ * lookup.collections is a JSON array of $lookup stages bodies:
+ * [{"from": "customers", "localField": "customerId", "foreignField": "_id", "as": "customer"}]
+ * with an optional "projection" applied when loading the collection.
+ *
+ * Output as $lookup: "as" is set to the array of the matching documents, in natural order, empty without match.
+ * A missing or null localField matches the documents with a missing or null foreignField, array values match
+ * on their elements, numbers match across types (1, 1L and 1.0).
+ *
+ * refresh() reloads the collections loaded more than ttlMs ago. A collection with more than maxDocuments documents
+ * is not loaded: the first load fails, a later one keeps the previous documents, as a failed reload does.
+ */
+public class MongoLookupJoin {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoLookupJoin.class);
+
+    // index key of missing and null values
+    private static final Object NULL_KEY = new Object();
+
+    private final List<Lookup> lookups;
+    private final long ttlNanos;
+    private final int maxDocuments;
+    private final LongSupplier nanoClock;
+
+    private volatile long refreshes;
+    private volatile long refreshFailures;
+
+    public MongoLookupJoin(List<Lookup> lookups, long ttlMs, int maxDocuments) {
+        this(lookups, ttlMs, maxDocuments, System::nanoTime);
+    }
+
+    MongoLookupJoin(List<Lookup> lookups, long ttlMs, int maxDocuments, LongSupplier nanoClock) {
+        this.lookups = lookups;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.maxDocuments = maxDocuments;
+        this.nanoClock = nanoClock;
+    }
+
+    /*
+     lookup.collections, empty list when blank. IllegalArgumentException if malformed
+     */
+    public static List<Lookup> parse(String json) {
+        if (json == null || json.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        BsonArray array;
+        try {
+            array = BsonArray.parse(json);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("not a JSON array: " + e.getMessage(), e);
+        }
+        List<Lookup> lookups = new ArrayList<>(array.size());
+        for (BsonValue value : array) {
+            if (!value.isDocument()) {
+                throw new IllegalArgumentException("not a lookup document: " + value);
+            }
+            BsonDocument spec = value.asDocument();
+            BsonValue projection = spec.get("projection");
+            if (projection != null && !projection.isDocument()) {
+                throw new IllegalArgumentException("projection is not a document: " + spec.toJson());
+            }
+            lookups.add(new Lookup(required(spec, "from"), required(spec, "localField"),
+                    required(spec, "foreignField"), required(spec, "as"),
+                    projection != null ? projection.asDocument() : null));
+        }
+        return lookups;
+    }
+
+    private static String required(BsonDocument spec, String field) {
+        BsonValue value = spec.get(field);
+        if (value == null || !value.isString() || value.asString().getValue().isEmpty()) {
+            throw new IllegalArgumentException("missing '" + field + "' in " + spec.toJson());
+        }
+        return value.asString().getValue();
+    }
+
+    /*
+     Loads the collections never loaded or older than ttlMs (ttlMs 0: loaded once).
+     ConnectException if a collection can't be loaded the first time
+     */
+    public void refresh(Function<String, MongoCollection<Document>> collections) {
+        long now = nanoClock.getAsLong();
+        for (Lookup lookup : lookups) {
+            if (lookup.index != null && (ttlNanos == 0 || now - lookup.loadedAt < ttlNanos)) {
+                continue;
+            }
+            try {
+                load(lookup, collections.apply(lookup.from));
+                refreshes++;
+            } catch (RuntimeException e) {
+                refreshFailures++;
+                if (lookup.index == null) {
+                    throw e instanceof ConnectException ? (ConnectException) e
+                            : new ConnectException("lookup.collections: can't load " + lookup.from, e);
+                }
+                log.warn("lookup.collections: can't reload {}, keeping the documents loaded before: {}",
+                        lookup.from, e.getMessage());
+            }
+            lookup.loadedAt = now;
+        }
+    }
+
+    private void load(Lookup lookup, MongoCollection<Document> collection) {
+        long start = System.nanoTime();
+        List<Document> documents = collection.find()
+                .projection(lookup.projection)
+                .limit(maxDocuments + 1)
+                .into(new ArrayList<>());
+        if (documents.size() > maxDocuments) {
+            throw new ConnectException("lookup.collections: " + lookup.from + " has more than "
+                    + maxDocuments + " documents (lookup.cache.max.documents)");
+        }
+
+        Map<Object, List<Document>> index = new HashMap<>();
+        List<Object> values = new ArrayList<>();
+        for (Document document : documents) {
+            values.clear();
+            collect(document, lookup.foreignPath, 0, values);
+            for (Object key : keys(values)) {
+                List<Document> matches = index.computeIfAbsent(key, k -> new ArrayList<>(1));
+                // an array foreignField can hold the same value twice
+                if (matches.isEmpty() || matches.get(matches.size() - 1) != document) {
+                    matches.add(document);
+                }
+            }
+        }
+        lookup.index = index;
+        lookup.documents = documents.size();
+        log.info("lookup.collections: loaded {} documents of {} on {} in {} ms", documents.size(), lookup.from,
+                lookup.foreignField, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /*
+     The document with the "as" fields, joined to the documents of the last load of each collection
+     */
+    public Document join(Document document) {
+        List<Object> values = new ArrayList<>();
+        for (Lookup lookup : lookups) {
+            values.clear();
+            collect(document, lookup.localPath, 0, values);
+            set(document, lookup.asPath, matches(lookup.index, keys(values)));
+        }
+        return document;
+    }
+
+    public RawBsonDocument join(RawBsonDocument document, Codec<Document> codec) {
+        return new RawBsonDocument(join(document.decode(codec)), codec);
+    }
+
+    public long refreshes() {
+        return refreshes;
+    }
+
+    public long refreshFailures() {
+        return refreshFailures;
+    }
+
+    // documents in memory, of all the lookup collections
+    public long documents() {
+        long documents = 0;
+        for (Lookup lookup : lookups) {
+            documents += lookup.documents;
+        }
+        return documents;
+    }
+
+    private static List<Document> matches(Map<Object, List<Document>> index, List<Object> keys) {
+        if (index == null) {
+            return new ArrayList<>();
+        }
+        if (keys.size() == 1) {
+            List<Document> matches = index.get(keys.get(0));
+            return matches != null ? new ArrayList<>(matches) : new ArrayList<>();
+        }
+        // array localField: each foreign document once
+        Set<Document> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Document> matches = new ArrayList<>();
+        for (Object key : keys) {
+            for (Document match : index.getOrDefault(key, Collections.emptyList())) {
+                if (seen.add(match)) {
+                    matches.add(match);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /*
+     Values at path, through arrays of embedded documents. Array values are added element by element
+     */
+    private static void collect(Object current, String[] path, int i, List<Object> values) {
+        if (current instanceof List) {
+            for (Object element : (List<?>) current) {
+                collect(element, path, i, values);
+            }
+            return;
+        }
+        if (i == path.length) {
+            values.add(current);
+            return;
+        }
+        if (current instanceof Document) {
+            Document document = (Document) current;
+            if (document.containsKey(path[i])) {
+                collect(document.get(path[i]), path, i + 1, values);
+            }
+        }
+    }
+
+    private static List<Object> keys(List<Object> values) {
+        if (values.isEmpty()) {
+            return Collections.singletonList(NULL_KEY);
+        }
+        List<Object> keys = new ArrayList<>(values.size());
+        for (Object value : values) {
+            keys.add(key(value));
+        }
+        return keys;
+    }
+
+    /*
+     Numbers of equal value share a key, as they match in Mongo
+     */
+    static Object key(Object value) {
+        if (value == null) {
+            return NULL_KEY;
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            if (d == Math.rint(d) && Math.abs(d) < 0x1p63) {
+                return (long) d;
+            }
+            return d;
+        }
+        if (value instanceof Decimal128) {
+            Decimal128 decimal = (Decimal128) value;
+            if (decimal.isNaN() || decimal.isInfinite()) {
+                return decimal;
+            }
+            BigDecimal big = BsonSchemaInference.bigDecimal(decimal).stripTrailingZeros();
+            if (big.scale() <= 0) {
+                try {
+                    return big.longValueExact();
+                } catch (ArithmeticException e) {
+                    // out of the long range
+                }
+            }
+            return big;
+        }
+        return value;
+    }
+
+    private static void set(Document document, String[] path, List<Document> value) {
+        Document current = document;
+        for (int i = 0; i < path.length - 1; i++) {
+            Object child = current.get(path[i]);
+            if (!(child instanceof Document)) {
+                child = new Document();
+                current.put(path[i], child);
+            }
+            current = (Document) child;
+        }
+        current.put(path[path.length - 1], value);
+    }
+
+    /**
+     * A lookup collection and its documents hashed on foreignField.
+     */
+    public static final class Lookup {
+        private final String from;
+        private final String foreignField;
+        private final String[] localPath;
+        private final String[] foreignPath;
+        private final String[] asPath;
+        private final BsonDocument projection;
+
+        private volatile Map<Object, List<Document>> index;
+        private volatile int documents;
+        private long loadedAt;
+
+        Lookup(String from, String localField, String foreignField, String as, BsonDocument projection) {
+            this.from = from;
+            this.foreignField = foreignField;
+            this.localPath = localField.split("\\.");
+            this.foreignPath = foreignField.split("\\.");
+            this.asPath = as.split("\\.");
+            this.projection = projection != null ? MongoQueryPlan.projection(projection, foreignField) : null;
+        }
+
+        public String from() {
+            return from;
+        }
+    }
+}
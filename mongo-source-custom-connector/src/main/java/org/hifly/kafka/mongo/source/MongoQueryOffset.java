@@ -0,0 +1,280 @@
+package org.hifly.kafka.mongo.source;
+
+import com.mongodb.client.model.Filters;
+import org.bson.BsonDocument;
+import org.bson.BsonNull;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Position of a MongoQuerySourceTask: time field value and _id of the last emitted document.
+ *
+ * Documents are read in (time.field, _id) order, the next poll reads the documents strictly after the position:
+ * documents sharing a time value are neither skipped nor replayed on restart.
+ *
+ * Kafka Connect offset:
+ * - lastProcessedTs: time field in epoch millis (Date, BSON Timestamp, Long or ISO-8601 string), 0 if missing or not a time
+ * - position: {"ts": ..., "_id": ...} as canonical extended JSON, so the BSON types survive the offset store
+ * - backfillEnd: during a backfill, {"ts": ..., "_id": null} with the time field where the backfill ends
+ */
+public final class MongoQueryOffset {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoQueryOffset.class);
+
+    public static final String LAST_PROCESSED_TS = "lastProcessedTs";
+    public static final String POSITION = "position";
+    public static final String BACKFILL_END = "backfillEnd";
+
+    private static final String TS = "ts";
+    private static final String ID = "_id";
+
+    private static final JsonWriterSettings EXTENDED_JSON = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+
+    // time field value and _id, Java or BSON values: both are encoded by the default codec registry
+    private final Object ts;
+    private final Object id;
+    private final long millis;
+    // offset written before the position existed: only lastProcessedTs is known
+    private final boolean legacy;
+    // records of a backfill: where it ends, null otherwise
+    private final MongoQueryOffset backfillEnd;
+
+    private MongoQueryOffset(Object ts, Object id, long millis, boolean legacy, MongoQueryOffset backfillEnd) {
+        this.ts = ts;
+        this.id = id;
+        this.millis = millis;
+        this.legacy = legacy;
+        this.backfillEnd = backfillEnd;
+    }
+
+    public static MongoQueryOffset of(Object ts, Object id) {
+        return new MongoQueryOffset(ts instanceof BsonNull ? null : ts, id instanceof BsonNull ? null : id, millis(ts), false, null);
+    }
+
+    /*
+     This position, in a backfill ending at end
+     */
+    public MongoQueryOffset backfilling(MongoQueryOffset end) {
+        return new MongoQueryOffset(ts, id, millis, legacy, end);
+    }
+
+    public MongoQueryOffset backfillEnd() {
+        return backfillEnd;
+    }
+
+    // time field value, null if missing
+    public Object ts() {
+        return ts;
+    }
+
+    public Object id() {
+        return id;
+    }
+
+    /*
+     null on first run or when the stored offset can't be read
+     */
+    public static MongoQueryOffset fromMap(Map<String, ?> offset) {
+        if (offset == null) {
+            return null;
+        }
+        Object position = offset.get(POSITION);
+        if (position instanceof String) {
+            try {
+                BsonDocument doc = BsonDocument.parse((String) position);
+                MongoQueryOffset parsed = of(doc.get(TS), doc.get(ID));
+                Object end = offset.get(BACKFILL_END);
+                if (end instanceof String) {
+                    BsonDocument endDoc = BsonDocument.parse((String) end);
+                    parsed = parsed.backfilling(of(endDoc.get(TS), null));
+                }
+                return parsed;
+            } catch (Exception e) {
+                log.warn("Can't parse offset position '{}'. Fallback on lastProcessedTs. Error: {}", position, e.getMessage());
+            }
+        }
+
+        Object tsObj = offset.get(LAST_PROCESSED_TS);
+        long ts;
+        if (tsObj == null) {
+            return null;
+        } else if (tsObj instanceof Long || tsObj instanceof Integer) {
+            ts = ((Number) tsObj).longValue();
+        } else if (tsObj instanceof String) {
+            ts = Long.parseLong((String) tsObj);
+        } else {
+            log.warn("{}. Ignore offset.", tsObj.getClass());
+            return null;
+        }
+        return ts > 0 ? new MongoQueryOffset(new Date(ts), null, ts, true, null) : null;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> offset = new HashMap<>(4);
+        offset.put(LAST_PROCESSED_TS, millis);
+        if (!legacy) {
+            offset.put(POSITION, positionJson());
+        }
+        if (backfillEnd != null) {
+            offset.put(BACKFILL_END, backfillEnd.positionJson());
+        }
+        return offset;
+    }
+
+    /*
+     Same JSON as the codec, written directly for the usual time and _id types: this runs once per record
+     */
+    private String positionJson() {
+        StringBuilder json = new StringBuilder(96).append("{\"").append(TS).append("\": ");
+        if (appendValue(json, ts)) {
+            json.append(", \"").append(ID).append("\": ");
+            if (appendValue(json, id)) {
+                return json.append('}').toString();
+            }
+        }
+        return new Document(TS, ts).append(ID, id).toJson(EXTENDED_JSON);
+    }
+
+    private static boolean appendValue(StringBuilder json, Object value) {
+        if (value instanceof BsonValue) {
+            BsonValue bson = (BsonValue) value;
+            switch (bson.getBsonType()) {
+                case DATE_TIME:
+                    value = new Date(bson.asDateTime().getValue());
+                    break;
+                case OBJECT_ID:
+                    value = bson.asObjectId().getValue();
+                    break;
+                case INT32:
+                    value = bson.asInt32().getValue();
+                    break;
+                case INT64:
+                    value = bson.asInt64().getValue();
+                    break;
+                case TIMESTAMP:
+                    value = bson.asTimestamp();
+                    break;
+                case NULL:
+                    value = null;
+                    break;
+                default:
+                    return false;
+            }
+        }
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof Date) {
+            json.append("{\"$date\": {\"$numberLong\": \"").append(((Date) value).getTime()).append("\"}}");
+        } else if (value instanceof ObjectId) {
+            json.append("{\"$oid\": \"").append(((ObjectId) value).toHexString()).append("\"}");
+        } else if (value instanceof Integer) {
+            json.append("{\"$numberInt\": \"").append(value).append("\"}");
+        } else if (value instanceof Long) {
+            json.append("{\"$numberLong\": \"").append(value).append("\"}");
+        } else if (value instanceof BsonTimestamp) {
+            BsonTimestamp timestamp = (BsonTimestamp) value;
+            json.append("{\"$timestamp\": {\"t\": ").append(Integer.toUnsignedLong(timestamp.getTime()))
+                    .append(", \"i\": ").append(Integer.toUnsignedLong(timestamp.getInc())).append("}}");
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /*
+     Documents after this position in (timeField, _id) order.
+     A legacy offset only has the time: its last millisecond is read again, records are replayed rather than lost.
+     Without _id (removed by mongo.pipeline) there is no tie-break, null if there is nothing to compare.
+     */
+    public Bson filter(String timeField) {
+        if (legacy) {
+            return Filters.gte(timeField, ts);
+        }
+        if (id == null) {
+            return ts != null ? Filters.gt(timeField, ts) : null;
+        }
+        if (ts == null) {
+            // missing and null time fields sort first
+            return Filters.or(
+                    Filters.ne(timeField, null),
+                    Filters.and(Filters.eq(timeField, null), Filters.gt(ID, id)));
+        }
+        return Filters.or(
+                Filters.gt(timeField, ts),
+                Filters.and(Filters.eq(timeField, ts), Filters.gt(ID, id)));
+    }
+
+    public long millis() {
+        return millis;
+    }
+
+    /*
+     epoch millis of a time field value, 0 if missing or not a time
+     */
+    static long millis(Object ts) {
+        if (ts instanceof Date) {
+            return ((Date) ts).getTime();
+        }
+        if (ts instanceof BsonTimestamp) {
+            return ((BsonTimestamp) ts).getTime() * 1000L;
+        }
+        if (ts instanceof Long || ts instanceof Integer) {
+            return ((Number) ts).longValue();
+        }
+        if (ts instanceof String) {
+            return parseIso((String) ts);
+        }
+        if (ts instanceof BsonValue) {
+            BsonValue value = (BsonValue) ts;
+            switch (value.getBsonType()) {
+                case DATE_TIME:
+                    return value.asDateTime().getValue();
+                case TIMESTAMP:
+                    return value.asTimestamp().getTime() * 1000L;
+                case INT64:
+                    return value.asInt64().getValue();
+                case INT32:
+                    return value.asInt32().getValue();
+                case STRING:
+                    return parseIso(value.asString().getValue());
+                default:
+                    return 0L;
+            }
+        }
+        return 0L;
+    }
+
+    private static long parseIso(String value) {
+        try {
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            try {
+                // no offset: UTC
+                return LocalDateTime.parse(value).toInstant(ZoneOffset.UTC).toEpochMilli();
+            } catch (DateTimeParseException ignored) {
+                return 0L;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        String position = legacy ? "{lastProcessedTs=" + millis : "{ts=" + ts + ", _id=" + id + ", lastProcessedTs=" + millis;
+        return backfillEnd != null ? position + ", backfillEnd=" + backfillEnd.ts + "}" : position + "}";
+    }
+}
@@ -0,0 +1,432 @@
+package org.hifly.kafka.mongo.source;
+
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadConcernLevel;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query of a MongoQuerySourceTask, compiled once at start from the configuration:
+ * parsed filter, pipeline stages, projection, sort, source partition and key path.
+ * Immutable, poll() only runs it from the current MongoQueryOffset.
+ */
+public class MongoQueryPlan {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoQueryPlan.class);
+
+    private static final String ID_FIELD = "_id";
+
+    private final String timeField;
+    private final Bson sort;
+    // null when empty
+    private final BsonDocument filter;
+    private final BsonDocument projection;
+    // [$match base filter] + mongo.pipeline, null for the find path
+    private final List<Bson> pipeline;
+    // $merge / $out: no documents to sort, project or resume from
+    private final boolean outputStage;
+    // null when the key is _id
+    private final String[] keyPath;
+    private final Map<String, Object> partition;
+    // 0: no limit
+    private final int maxRecords;
+
+    // read options, null / 0 / false when not set
+    private final ReadPreference readPreference;
+    private final ReadConcern readConcern;
+    private final int batchSize;
+    private final long maxTimeMs;
+    private final BsonDocument hint;
+    private final String hintName;
+    private final boolean allowDiskUse;
+
+    // mongo.pipeline.probe: (time field, _id) projection, null without probe
+    private final Bson probeProjection;
+
+    public MongoQueryPlan(MongoQuerySourceConfig config) {
+        this.timeField = config.timeField();
+        this.sort = Sorts.ascending(timeField, ID_FIELD);
+        this.filter = parseFilter(config.baseFilterJson());
+        this.projection = parseProjection(config.projectionJson(), timeField, config.keyField());
+
+        List<Bson> basePipeline = parsePipeline(config.pipelineJson());
+        this.outputStage = !basePipeline.isEmpty() && endsWithOutputStage(basePipeline);
+        this.pipeline = basePipeline.isEmpty() ? null : prefix(filter, basePipeline);
+
+        String keyField = config.keyField();
+        this.keyPath = keyField == null || keyField.isEmpty() ? null : keyField.split("\\.");
+        this.partition = sourcePartition(config.database(), config.collection());
+        this.maxRecords = config.pollMaxRecords();
+
+        this.readPreference = config.readPreference().isEmpty() ? null : ReadPreference.valueOf(config.readPreference());
+        this.readConcern = config.readConcern().isEmpty() ? null
+                : new ReadConcern(ReadConcernLevel.fromString(config.readConcern()));
+        this.batchSize = config.batchSize();
+        this.maxTimeMs = config.maxTimeMs();
+        String hintJson = config.hint() == null ? "" : config.hint().trim();
+        this.hint = hintJson.startsWith("{") ? parseHint(hintJson) : null;
+        this.hintName = hintJson.isEmpty() || hintJson.startsWith("{") ? null : hintJson;
+        this.allowDiskUse = config.allowDiskUse();
+        this.probeProjection = config.pipelineProbe() && pipeline != null && !outputStage
+                ? Projections.include(timeField, ID_FIELD) : null;
+    }
+
+    /*
+     collection with mongo.read.preference and mongo.read.concern, when set
+     */
+    public <T> MongoCollection<T> readFrom(MongoCollection<T> collection) {
+        MongoCollection<T> configured = collection;
+        if (readPreference != null) {
+            configured = configured.withReadPreference(readPreference);
+        }
+        if (readConcern != null) {
+            configured = configured.withReadConcern(readConcern);
+        }
+        return configured;
+    }
+
+    /*
+     Documents after position (null on first run) in (time.field, _id) order
+     */
+    public <T> MongoIterable<T> query(MongoCollection<?> collection, Class<T> documentClass, MongoQueryOffset position) {
+        if (pipeline != null) {
+            AggregateIterable<T> aggregate = collection.aggregate(pipeline(position), documentClass);
+            if (batchSize > 0) {
+                aggregate = aggregate.batchSize(batchSize);
+            }
+            if (maxTimeMs > 0) {
+                aggregate = aggregate.maxTime(maxTimeMs, TimeUnit.MILLISECONDS);
+            }
+            if (hint != null) {
+                aggregate = aggregate.hint(hint);
+            } else if (hintName != null) {
+                aggregate = aggregate.hintString(hintName);
+            }
+            return allowDiskUse ? aggregate.allowDiskUse(true) : aggregate;
+        }
+        Bson keyset = position != null ? position.filter(timeField) : null;
+        return find(collection, documentClass, keyset, maxRecords, maxTimeMs);
+    }
+
+    /*
+     Documents of a backfill slice: base filter and range, in (time.field, _id) order.
+     The slice is read by one cursor: no limit, no mongo.max.time.ms (a limit on the whole cursor)
+     */
+    public <T> FindIterable<T> querySlice(MongoCollection<?> collection, Class<T> documentClass, Bson range) {
+        return find(collection, documentClass, range, 0, 0L);
+    }
+
+    /*
+     Lowest not null and highest time field of the documents of the base filter, null without documents
+     */
+    public Object firstTime(MongoCollection<Document> collection) {
+        Bson notNull = Filters.ne(timeField, null);
+        return boundTime(collection, filter == null ? notNull : Filters.and(filter, notNull), sort);
+    }
+
+    public Object lastTime(MongoCollection<Document> collection) {
+        return boundTime(collection, filter == null ? new BsonDocument() : filter, Sorts.descending(timeField, ID_FIELD));
+    }
+
+    private Object boundTime(MongoCollection<Document> collection, Bson boundFilter, Bson boundSort) {
+        Document first = collection.find(boundFilter)
+                .sort(boundSort)
+                .projection(Projections.include(timeField, ID_FIELD))
+                .limit(1)
+                .first();
+        return first != null ? first.get(timeField) : null;
+    }
+
+    private <T> FindIterable<T> find(MongoCollection<?> collection, Class<T> documentClass, Bson condition,
+                                     int limit, long timeLimitMs) {
+        Bson effectiveFilter = condition == null ? filter
+                : filter == null ? condition
+                : Filters.and(filter, condition);
+
+        FindIterable<T> find = effectiveFilter != null
+                ? collection.find(effectiveFilter, documentClass)
+                : collection.find(documentClass);
+        find = find.sort(sort);
+        if (limit > 0) {
+            find = find.limit(limit);
+        }
+        if (batchSize > 0) {
+            find = find.batchSize(batchSize);
+        }
+        if (timeLimitMs > 0) {
+            find = find.maxTime(timeLimitMs, TimeUnit.MILLISECONDS);
+        }
+        if (hint != null) {
+            find = find.hint(hint);
+        } else if (hintName != null) {
+            find = find.hintString(hintName);
+        }
+        if (allowDiskUse) {
+            find = find.allowDiskUse(true);
+        }
+        return projection != null ? find.projection(projection) : find;
+    }
+
+    // mongo.pipeline is set
+    public boolean aggregates() {
+        return pipeline != null;
+    }
+
+    public boolean probes() {
+        return probeProjection != null;
+    }
+
+    /*
+     false when the pipeline can be skipped: mongo.pipeline.probe and no document of the collection after position.
+     The probe is a find on base filter + position, limit 1, projected on (time field, _id): covered by the
+     {time.field: 1, _id: 1} index
+     */
+    public boolean hasNewDocuments(MongoCollection<?> collection, MongoQueryOffset position) {
+        Bson keyset = probeProjection != null && position != null ? position.filter(timeField) : null;
+        if (keyset == null) {
+            return true;
+        }
+        Bson probeFilter = filter == null ? keyset : Filters.and(filter, keyset);
+        FindIterable<BsonDocument> probe = collection.find(probeFilter, BsonDocument.class)
+                .projection(probeProjection)
+                .limit(1);
+        if (maxTimeMs > 0) {
+            probe = probe.maxTime(maxTimeMs, TimeUnit.MILLISECONDS);
+        }
+        return probe.first() != null;
+    }
+
+    /*
+     [$match base filter] + mongo.pipeline + [$match position] + $sort + [$limit] + [$project], null without mongo.pipeline.
+     The position is taken from the pipeline output, it is matched after the configured stages.
+     */
+    public List<Bson> pipeline(MongoQueryOffset position) {
+        if (pipeline == null || outputStage) {
+            return pipeline;
+        }
+        Bson keyset = position != null ? position.filter(timeField) : null;
+        List<Bson> effectivePipeline = new ArrayList<>(pipeline.size() + 4);
+        effectivePipeline.addAll(pipeline);
+        if (keyset != null) {
+            effectivePipeline.add(Aggregates.match(keyset));
+        }
+        effectivePipeline.add(Aggregates.sort(sort));
+        if (maxRecords > 0) {
+            effectivePipeline.add(Aggregates.limit(maxRecords));
+        }
+        if (projection != null) {
+            effectivePipeline.add(Aggregates.project(projection));
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("effectivePipeline {}", effectivePipeline);
+        }
+        return effectivePipeline;
+    }
+
+    public Map<String, Object> partition() {
+        return partition;
+    }
+
+    public int maxRecords() {
+        return maxRecords;
+    }
+
+    public String timeField() {
+        return timeField;
+    }
+
+    // mongo.base.filter, null when empty
+    public BsonDocument filter() {
+        return filter;
+    }
+
+    public Object key(Document doc) {
+        if (keyPath == null) {
+            return doc.get(ID_FIELD);
+        }
+        Object current = doc;
+        for (String part : keyPath) {
+            if (!(current instanceof Document)) {
+                return null;
+            }
+            current = ((Document) current).get(part);
+            if (current == null) {
+                return null;
+            }
+        }
+        return current;
+    }
+
+    public BsonValue key(RawBsonDocument doc) {
+        if (keyPath == null) {
+            return doc.get(ID_FIELD);
+        }
+        BsonValue current = doc;
+        for (String part : keyPath) {
+            if (current == null || !current.isDocument()) {
+                return null;
+            }
+            current = current.asDocument().get(part);
+        }
+        return current;
+    }
+
+    public static Map<String, Object> sourcePartition(String db, String coll) {
+        Map<String, Object> partition = new HashMap<>();
+        partition.put("db", db);
+        partition.put("collection", coll);
+        return Collections.unmodifiableMap(partition);
+    }
+
+    private static List<Bson> prefix(BsonDocument filter, List<Bson> basePipeline) {
+        List<Bson> prefix = new ArrayList<>(basePipeline.size() + 1);
+        if (filter != null) {
+            prefix.add(Aggregates.match(filter));
+        }
+        prefix.addAll(basePipeline);
+        return Collections.unmodifiableList(prefix);
+    }
+
+    private static BsonDocument parseFilter(String json) {
+        if (json == null || json.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            BsonDocument filter = BsonDocument.parse(json);
+            return filter.isEmpty() ? null : filter;
+        } catch (Exception e) {
+            log.warn("Can't parse mongo.base.filter='{}'. Empty filter. Errore: {}", json, e.getMessage());
+            return null;
+        }
+    }
+
+    private static BsonDocument parseHint(String json) {
+        try {
+            return BsonDocument.parse(json);
+        } catch (Exception e) {
+            log.warn("Can't parse mongo.hint='{}'. No hint. Error: {}", json, e.getMessage());
+            return null;
+        }
+    }
+
+    private static List<Bson> parsePipeline(String json) {
+        if (json == null || json.trim().isEmpty() || json.trim().equals("[]")) {
+            return Collections.emptyList();
+        }
+        try {
+            BsonArray array = BsonArray.parse(json);
+            List<Bson> stages = new ArrayList<>(array.size());
+            for (BsonValue v : array) {
+                stages.add(v.asDocument());
+            }
+            return stages;
+        } catch (Exception e) {
+            log.warn("Can't parse mongo.pipeline='{}'. Empty pipeline. Error: {}", json, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    private static BsonDocument parseProjection(String json, String timeField, String keyField) {
+        if (json == null || json.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            BsonDocument requested = BsonDocument.parse(json);
+            return requested.isEmpty() ? null : projection(requested, ID_FIELD, timeField, keyField);
+        } catch (Exception e) {
+            log.warn("Can't parse mongo.projection='{}'. No projection. Error: {}", json, e.getMessage());
+            return null;
+        }
+    }
+
+    /*
+     Requested projection, with the fields the task needs: added to an inclusion projection, never excluded.
+     null if nothing is left to project.
+     */
+    static BsonDocument projection(BsonDocument requested, String... keepFields) {
+        BsonDocument projection = requested.clone();
+        boolean inclusion = isInclusion(projection);
+
+        for (String field : keepFields) {
+            if (field == null || field.isEmpty()) {
+                continue;
+            }
+            if (!inclusion) {
+                projection.keySet().removeIf(k -> isSameOrNested(k, field) || isSameOrNested(field, k));
+            } else if (ID_FIELD.equals(field)) {
+                // _id is included unless excluded
+                if (projection.containsKey(ID_FIELD) && isExcluded(projection.get(ID_FIELD))) {
+                    projection.remove(ID_FIELD);
+                }
+            } else if (!isIncluded(projection, field)) {
+                projection.keySet().removeIf(k -> k.startsWith(field + "."));
+                projection.put(field, new BsonInt32(1));
+            }
+        }
+        return projection.isEmpty() ? null : projection;
+    }
+
+    private static boolean isInclusion(BsonDocument projection) {
+        for (Map.Entry<String, BsonValue> entry : projection.entrySet()) {
+            if (!ID_FIELD.equals(entry.getKey()) && !isExcluded(entry.getValue()) && !isArrayOperator(entry.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // field or one of its parents is already included
+    private static boolean isIncluded(BsonDocument projection, String field) {
+        for (Map.Entry<String, BsonValue> entry : projection.entrySet()) {
+            if (isSameOrNested(field, entry.getKey()) && !isExcluded(entry.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isExcluded(BsonValue value) {
+        return (value.isNumber() && value.asNumber().doubleValue() == 0)
+                || (value.isBoolean() && !value.asBoolean().getValue());
+    }
+
+    // $slice / $elemMatch select array elements, they don't make the projection an inclusion
+    private static boolean isArrayOperator(BsonValue value) {
+        return value.isDocument() && value.asDocument().size() == 1
+                && (value.asDocument().containsKey("$slice") || value.asDocument().containsKey("$elemMatch"));
+    }
+
+    private static boolean isSameOrNested(String path, String parent) {
+        return path.equals(parent) || path.startsWith(parent + ".");
+    }
+
+    // $out and $merge must be the last stage
+    private static boolean endsWithOutputStage(List<Bson> pipeline) {
+        Bson last = pipeline.get(pipeline.size() - 1);
+        return last instanceof BsonDocument
+                && (((BsonDocument) last).containsKey("$out") || ((BsonDocument) last).containsKey("$merge"));
+    }
+}
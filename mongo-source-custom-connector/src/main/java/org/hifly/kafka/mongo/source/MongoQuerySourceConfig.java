@@ -2,6 +2,7 @@ package org.hifly.kafka.mongo.source;
 
 import org.apache.kafka.common.config.AbstractConfig;
 import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigException;
 
 import java.util.Map;
 
@@ -11,15 +12,75 @@ public class MongoQuerySourceConfig extends AbstractConfig {
     public static final String MONGO_URI_CONFIG = "mongo.uri";
     public static final String MONGO_DB_CONFIG = "mongo.database";
     public static final String MONGO_COLLECTION_CONFIG = "mongo.collection";
+    public static final String POOL_MAX_SIZE_CONFIG = "mongo.pool.max.size";
+    public static final String POOL_MIN_SIZE_CONFIG = "mongo.pool.min.size";
+    public static final String POOL_MAX_IDLE_MS_CONFIG = "mongo.pool.max.idle.ms";
+    public static final String READ_PREFERENCE_CONFIG = "mongo.read.preference";
+    public static final String READ_CONCERN_CONFIG = "mongo.read.concern";
+    public static final String BATCH_SIZE_CONFIG = "mongo.batch.size";
+    public static final String MAX_TIME_MS_CONFIG = "mongo.max.time.ms";
+    public static final String HINT_CONFIG = "mongo.hint";
+    public static final String ALLOW_DISK_USE_CONFIG = "mongo.allow.disk.use";
+    public static final String INDEX_CHECK_CONFIG = "index.check";
+    public static final String PIPELINE_PROBE_CONFIG = "mongo.pipeline.probe";
     public static final String BASE_FILTER_CONFIG = "mongo.base.filter";
     public static final String PIPELINE_CONFIG = "mongo.pipeline";
+    public static final String PROJECTION_CONFIG = "mongo.projection";
+    public static final String LOOKUP_COLLECTIONS_CONFIG = "lookup.collections";
+    public static final String LOOKUP_CACHE_TTL_MS_CONFIG = "lookup.cache.ttl.ms";
+    public static final String LOOKUP_CACHE_MAX_DOCUMENTS_CONFIG = "lookup.cache.max.documents";
     public static final String KEY_FIELD_CONFIG = "mongo.key.field";
     public static final String TIME_FIELD_CONFIG = "time.field";
     public static final String POLL_INTERVAL_MS_CONFIG = "poll.interval.ms";
+    public static final String POLL_INTERVAL_MAX_MS_CONFIG = "poll.interval.max.ms";
+    public static final String POLL_JITTER_CONFIG = "poll.jitter";
+    public static final String POLL_MAX_RECORDS_CONFIG = "poll.max.records";
+    public static final String PREFETCH_ENABLED_CONFIG = "prefetch.enabled";
+    public static final String PREFETCH_QUEUE_MAX_RECORDS_CONFIG = "prefetch.queue.max.records";
+    public static final String PREFETCH_QUEUE_MAX_BYTES_CONFIG = "prefetch.queue.max.bytes";
+    public static final String BACKFILL_SLICES_CONFIG = "backfill.slices";
+    public static final String BACKFILL_SLICE_QUEUE_MAX_RECORDS_CONFIG = "backfill.slice.queue.max.records";
+    public static final String BACKFILL_SLICE_QUEUE_MAX_BYTES_CONFIG = "backfill.slice.queue.max.bytes";
+    public static final String CONVERSION_THREADS_CONFIG = "conversion.threads";
+    public static final String CONVERSION_PARALLEL_MIN_BYTES_CONFIG = "conversion.parallel.min.bytes";
     public static final String OUTPUT_FORMAT_CONFIG = "output.format";
+    public static final String AVRO_SCHEMA_MODE_CONFIG = "avro.schema.mode";
+    public static final String JSON_MODE_CONFIG = "output.json.mode";
+    public static final String JSON_BYTES_CONFIG = "output.json.bytes";
 
     public static final String OUTPUT_FORMAT_JSON = "json";
     public static final String OUTPUT_FORMAT_AVRO = "avro";
+    public static final String OUTPUT_FORMAT_BSON = "bson";
+
+    public static final String AVRO_SCHEMA_MODE_FIXED = "fixed";
+    public static final String AVRO_SCHEMA_MODE_INFERRED = "inferred";
+
+    public static final String JSON_MODE_RELAXED = "relaxed";
+    public static final String JSON_MODE_EXTENDED = "extended";
+    public static final String JSON_MODE_PLAIN = "plain";
+
+    public static final String INDEX_CHECK_OFF = "off";
+    public static final String INDEX_CHECK_WARN = "warn";
+    public static final String INDEX_CHECK_FAIL = "fail";
+    public static final String INDEX_CHECK_CREATE = "create";
+
+    private static final ConfigDef.Validator NULL_OR_NON_NEGATIVE = ConfigDef.LambdaValidator.with(
+            (name, value) -> {
+                if (value != null && ((Number) value).longValue() < 0) {
+                    throw new ConfigException(name, value, "Value must be at least 0");
+                }
+            },
+            () -> "null or [0,...]");
+
+    private static final ConfigDef.Validator LOOKUPS = ConfigDef.LambdaValidator.with(
+            (name, value) -> {
+                try {
+                    MongoLookupJoin.parse((String) value);
+                } catch (IllegalArgumentException e) {
+                    throw new ConfigException(name, value, e.getMessage());
+                }
+            },
+            () -> "JSON array of {from, localField, foreignField, as, [projection]}");
 
     public MongoQuerySourceConfig(Map<?, ?> originals) {
         super(configDef(), originals);
@@ -47,6 +108,77 @@ public class MongoQuerySourceConfig extends AbstractConfig {
                         ConfigDef.Type.STRING,
                         ConfigDef.Importance.HIGH,
                         "Collection Mongo")
+                .define(
+                        POOL_MAX_SIZE_CONFIG,
+                        ConfigDef.Type.INT,
+                        null,
+                        NULL_OR_NON_NEGATIVE,
+                        ConfigDef.Importance.LOW,
+                        "max connections of the MongoClient shared by the tasks of a worker with the same mongo.uri and pool settings. "
+                                + "Default: maxPoolSize of mongo.uri, 100 if missing")
+                .define(
+                        POOL_MIN_SIZE_CONFIG,
+                        ConfigDef.Type.INT,
+                        null,
+                        NULL_OR_NON_NEGATIVE,
+                        ConfigDef.Importance.LOW,
+                        "min connections kept open by the shared MongoClient. Default: minPoolSize of mongo.uri, 0 if missing")
+                .define(
+                        POOL_MAX_IDLE_MS_CONFIG,
+                        ConfigDef.Type.LONG,
+                        null,
+                        NULL_OR_NON_NEGATIVE,
+                        ConfigDef.Importance.LOW,
+                        "idle connections of the shared MongoClient are closed after this time. "
+                                + "Default: maxIdleTimeMS of mongo.uri, no limit if missing")
+                .define(
+                        READ_PREFERENCE_CONFIG,
+                        ConfigDef.Type.STRING,
+                        "",
+                        ConfigDef.ValidString.in("", "primary", "primaryPreferred", "secondary", "secondaryPreferred", "nearest"),
+                        ConfigDef.Importance.MEDIUM,
+                        "read preference of the source queries, empty: readPreference of mongo.uri (primary if missing)")
+                .define(
+                        READ_CONCERN_CONFIG,
+                        ConfigDef.Type.STRING,
+                        "",
+                        ConfigDef.ValidString.in("", "local", "available", "majority", "linearizable", "snapshot"),
+                        ConfigDef.Importance.LOW,
+                        "read concern of the source queries, empty: readConcernLevel of mongo.uri (server default if missing)")
+                .define(
+                        BATCH_SIZE_CONFIG,
+                        ConfigDef.Type.INT,
+                        0,
+                        ConfigDef.Range.atLeast(0),
+                        ConfigDef.Importance.LOW,
+                        "documents per cursor batch (find/aggregate and getMore), 0: server default")
+                .define(
+                        MAX_TIME_MS_CONFIG,
+                        ConfigDef.Type.LONG,
+                        0L,
+                        ConfigDef.Range.atLeast(0L),
+                        ConfigDef.Importance.LOW,
+                        "server time limit of each query command (maxTimeMS), 0: no limit")
+                .define(
+                        HINT_CONFIG,
+                        ConfigDef.Type.STRING,
+                        null,
+                        ConfigDef.Importance.LOW,
+                        "index to use: index name or JSON key pattern (for example {\"lastUpdateTime\": 1, \"_id\": 1})")
+                .define(
+                        ALLOW_DISK_USE_CONFIG,
+                        ConfigDef.Type.BOOLEAN,
+                        false,
+                        ConfigDef.Importance.LOW,
+                        "let sorts and aggregation stages over the memory limit write temporary files")
+                .define(
+                        INDEX_CHECK_CONFIG,
+                        ConfigDef.Type.STRING,
+                        INDEX_CHECK_WARN,
+                        ConfigDef.ValidString.in(INDEX_CHECK_OFF, INDEX_CHECK_WARN, INDEX_CHECK_FAIL, INDEX_CHECK_CREATE),
+                        ConfigDef.Importance.MEDIUM,
+                        "at start, explain the query and look for collection scans and in-memory sorts: "
+                                + "'off', 'warn', 'fail' (the task does not start) or 'create' (create the index on time.field, _id)")
                 .define(
                         BASE_FILTER_CONFIG,
                         ConfigDef.Type.STRING,
@@ -59,7 +191,47 @@ public class MongoQuerySourceConfig extends AbstractConfig {
                         "[]",
                         ConfigDef.Importance.MEDIUM,
                         "Pipeline aggregation Mongo JSON array, es: "
-                                + "[{\"$match\": {...}}, {\"$project\": {...}}]")
+                                + "[{\"$match\": {...}}, {\"$project\": {...}}]. "
+                                + "The output documents must keep time.field and _id of the collection documents: "
+                                + "the position is matched and sorted on them after the pipeline stages")
+                .define(
+                        PIPELINE_PROBE_CONFIG,
+                        ConfigDef.Type.BOOLEAN,
+                        false,
+                        ConfigDef.Importance.MEDIUM,
+                        "with mongo.pipeline: before each run, look for a document after the offset with find(limit 1) "
+                                + "and skip the pipeline when there is none. The pipeline output must keep time.field and _id "
+                                + "of the collection documents")
+                .define(
+                        LOOKUP_COLLECTIONS_CONFIG,
+                        ConfigDef.Type.STRING,
+                        "",
+                        LOOKUPS,
+                        ConfigDef.Importance.MEDIUM,
+                        "$lookup done by the task on collections cached in memory, es: "
+                                + "[{\"from\": \"customers\", \"localField\": \"customerId\", \"foreignField\": \"_id\", \"as\": \"customer\"}]")
+                .define(
+                        LOOKUP_CACHE_TTL_MS_CONFIG,
+                        ConfigDef.Type.LONG,
+                        300000L,
+                        ConfigDef.Range.atLeast(0L),
+                        ConfigDef.Importance.LOW,
+                        "reload the lookup.collections older than this before a poll. 0: loaded once at start")
+                .define(
+                        LOOKUP_CACHE_MAX_DOCUMENTS_CONFIG,
+                        ConfigDef.Type.INT,
+                        100000,
+                        ConfigDef.Range.atLeast(1),
+                        ConfigDef.Importance.LOW,
+                        "max documents cached per lookup collection: a larger collection is not loaded")
+                .define(
+                        PROJECTION_CONFIG,
+                        ConfigDef.Type.STRING,
+                        "{}",
+                        ConfigDef.Importance.MEDIUM,
+                        "Projection JSON document, es: {\"status\": 1, \"customer.name\": 1}. "
+                                + "_id, time.field and mongo.key.field are always kept. "
+                                + "Applied to find or appended as $project to mongo.pipeline")
                 .define(
                         KEY_FIELD_CONFIG,
                         ConfigDef.Type.STRING,
@@ -77,14 +249,114 @@ public class MongoQuerySourceConfig extends AbstractConfig {
                         ConfigDef.Type.LONG,
                         60000L,
                         ConfigDef.Importance.MEDIUM,
-                        "polling interval in milliseconds")
+                        "polling interval in milliseconds, after a poll returning less than poll.max.records")
+                .define(
+                        POLL_INTERVAL_MAX_MS_CONFIG,
+                        ConfigDef.Type.LONG,
+                        0L,
+                        ConfigDef.Range.atLeast(0L),
+                        ConfigDef.Importance.LOW,
+                        "max polling interval in milliseconds: consecutive empty polls double poll.interval.ms up to this value. "
+                                + "0: no backoff")
+                .define(
+                        POLL_JITTER_CONFIG,
+                        ConfigDef.Type.DOUBLE,
+                        0.2,
+                        ConfigDef.Range.between(0.0, 1.0),
+                        ConfigDef.Importance.LOW,
+                        "share of the polling interval removed at random, so tasks don't poll in lockstep")
+                .define(
+                        POLL_MAX_RECORDS_CONFIG,
+                        ConfigDef.Type.INT,
+                        10000,
+                        ConfigDef.Range.atLeast(0),
+                        ConfigDef.Importance.MEDIUM,
+                        "max records per poll. A full poll is followed by the next one without waiting. 0: no limit")
+                .define(
+                        PREFETCH_ENABLED_CONFIG,
+                        ConfigDef.Type.BOOLEAN,
+                        false,
+                        ConfigDef.Importance.MEDIUM,
+                        "read and convert documents on a background thread, poll() drains the converted records")
+                .define(
+                        PREFETCH_QUEUE_MAX_RECORDS_CONFIG,
+                        ConfigDef.Type.INT,
+                        20000,
+                        ConfigDef.Range.atLeast(1),
+                        ConfigDef.Importance.LOW,
+                        "with prefetch.enabled: max records read ahead")
+                .define(
+                        PREFETCH_QUEUE_MAX_BYTES_CONFIG,
+                        ConfigDef.Type.LONG,
+                        64L * 1024 * 1024,
+                        ConfigDef.Range.atLeast(1L),
+                        ConfigDef.Importance.LOW,
+                        "with prefetch.enabled: max bytes of record values read ahead")
+                .define(
+                        BACKFILL_SLICES_CONFIG,
+                        ConfigDef.Type.INT,
+                        1,
+                        ConfigDef.Range.atLeast(1),
+                        ConfigDef.Importance.MEDIUM,
+                        "on first run: time slices on time.field of the documents up to the last one, read concurrently "
+                                + "and emitted in order, then incremental polling. 1: no backfill")
+                .define(
+                        BACKFILL_SLICE_QUEUE_MAX_RECORDS_CONFIG,
+                        ConfigDef.Type.INT,
+                        10000,
+                        ConfigDef.Range.atLeast(1),
+                        ConfigDef.Importance.LOW,
+                        "max records read ahead per backfill slice")
+                .define(
+                        BACKFILL_SLICE_QUEUE_MAX_BYTES_CONFIG,
+                        ConfigDef.Type.LONG,
+                        16L * 1024 * 1024,
+                        ConfigDef.Range.atLeast(1L),
+                        ConfigDef.Importance.LOW,
+                        "max bytes (record values) read ahead per backfill slice")
+                .define(
+                        CONVERSION_THREADS_CONFIG,
+                        ConfigDef.Type.INT,
+                        1,
+                        ConfigDef.Range.atLeast(1),
+                        ConfigDef.Importance.LOW,
+                        "threads converting each cursor batch to records, in order. 1: conversion on the polling thread")
+                .define(
+                        CONVERSION_PARALLEL_MIN_BYTES_CONFIG,
+                        ConfigDef.Type.LONG,
+                        16384L,
+                        ConfigDef.Range.atLeast(0L),
+                        ConfigDef.Importance.LOW,
+                        "with conversion.threads > 1: average BSON size of the batch documents from which the batch is converted in parallel")
                 .define(
                         OUTPUT_FORMAT_CONFIG,
                         ConfigDef.Type.STRING,
                         OUTPUT_FORMAT_JSON,
-                        ConfigDef.ValidString.in(OUTPUT_FORMAT_JSON, OUTPUT_FORMAT_AVRO),
+                        ConfigDef.ValidString.in(OUTPUT_FORMAT_JSON, OUTPUT_FORMAT_AVRO, OUTPUT_FORMAT_BSON),
+                        ConfigDef.Importance.MEDIUM,
+                        "output format 'json', 'avro' (Struct Avro) or 'bson' (raw BSON document bytes)")
+                .define(
+                        AVRO_SCHEMA_MODE_CONFIG,
+                        ConfigDef.Type.STRING,
+                        AVRO_SCHEMA_MODE_FIXED,
+                        ConfigDef.ValidString.in(AVRO_SCHEMA_MODE_FIXED, AVRO_SCHEMA_MODE_INFERRED),
                         ConfigDef.Importance.MEDIUM,
-                        "output format 'json' or 'avro' (Struct Avro)");
+                        "with output.format=avro: 'fixed' (_id, payload as JSON, timestamp) "
+                                + "or 'inferred' (typed Struct, schema inferred from the documents)")
+                .define(
+                        JSON_MODE_CONFIG,
+                        ConfigDef.Type.STRING,
+                        JSON_MODE_RELAXED,
+                        ConfigDef.ValidString.in(JSON_MODE_RELAXED, JSON_MODE_EXTENDED, JSON_MODE_PLAIN),
+                        ConfigDef.Importance.LOW,
+                        "JSON of output.format=json and of the fixed avro payload: 'relaxed' (as Document.toJson()), "
+                                + "'extended' (canonical extended JSON) or 'plain' (ObjectId as string, dates as epoch millis)")
+                .define(
+                        JSON_BYTES_CONFIG,
+                        ConfigDef.Type.BOOLEAN,
+                        false,
+                        ConfigDef.Importance.LOW,
+                        "with output.format=json: value as UTF-8 bytes (bytes schema) instead of a string");
     }
 
     public String topic() {
@@ -103,12 +375,70 @@ public class MongoQuerySourceConfig extends AbstractConfig {
         return getString(MONGO_COLLECTION_CONFIG);
     }
 
+    public Integer poolMaxSize() {
+        return getInt(POOL_MAX_SIZE_CONFIG);
+    }
+
+    public Integer poolMinSize() {
+        return getInt(POOL_MIN_SIZE_CONFIG);
+    }
+
+    public Long poolMaxIdleMs() {
+        return getLong(POOL_MAX_IDLE_MS_CONFIG);
+    }
+
+    public String readPreference() {
+        return getString(READ_PREFERENCE_CONFIG);
+    }
+
+    public String readConcern() {
+        return getString(READ_CONCERN_CONFIG);
+    }
+
+    public int batchSize() {
+        return getInt(BATCH_SIZE_CONFIG);
+    }
+
+    public long maxTimeMs() {
+        return getLong(MAX_TIME_MS_CONFIG);
+    }
+
+    public String hint() {
+        return getString(HINT_CONFIG);
+    }
+
+    public boolean allowDiskUse() {
+        return getBoolean(ALLOW_DISK_USE_CONFIG);
+    }
+
+    public String indexCheck() {
+        return getString(INDEX_CHECK_CONFIG);
+    }
+
+    public boolean pipelineProbe() {
+        return getBoolean(PIPELINE_PROBE_CONFIG);
+    }
+
     public String baseFilterJson() {
         return getString(BASE_FILTER_CONFIG);
     }
 
     public String pipelineJson() { return getString(PIPELINE_CONFIG); }
 
+    public String projectionJson() { return getString(PROJECTION_CONFIG); }
+
+    public String lookupCollectionsJson() {
+        return getString(LOOKUP_COLLECTIONS_CONFIG);
+    }
+
+    public long lookupCacheTtlMs() {
+        return getLong(LOOKUP_CACHE_TTL_MS_CONFIG);
+    }
+
+    public int lookupCacheMaxDocuments() {
+        return getInt(LOOKUP_CACHE_MAX_DOCUMENTS_CONFIG);
+    }
+
     public String keyField() { return getString(KEY_FIELD_CONFIG); }
 
     public String timeField() {
@@ -119,7 +449,63 @@ public class MongoQuerySourceConfig extends AbstractConfig {
         return getLong(POLL_INTERVAL_MS_CONFIG);
     }
 
+    public long pollIntervalMaxMs() {
+        return getLong(POLL_INTERVAL_MAX_MS_CONFIG);
+    }
+
+    public double pollJitter() {
+        return getDouble(POLL_JITTER_CONFIG);
+    }
+
+    public int pollMaxRecords() {
+        return getInt(POLL_MAX_RECORDS_CONFIG);
+    }
+
+    public boolean prefetchEnabled() {
+        return getBoolean(PREFETCH_ENABLED_CONFIG);
+    }
+
+    public int prefetchQueueMaxRecords() {
+        return getInt(PREFETCH_QUEUE_MAX_RECORDS_CONFIG);
+    }
+
+    public long prefetchQueueMaxBytes() {
+        return getLong(PREFETCH_QUEUE_MAX_BYTES_CONFIG);
+    }
+
+    public int backfillSlices() {
+        return getInt(BACKFILL_SLICES_CONFIG);
+    }
+
+    public int backfillSliceQueueMaxRecords() {
+        return getInt(BACKFILL_SLICE_QUEUE_MAX_RECORDS_CONFIG);
+    }
+
+    public long backfillSliceQueueMaxBytes() {
+        return getLong(BACKFILL_SLICE_QUEUE_MAX_BYTES_CONFIG);
+    }
+
+    public int conversionThreads() {
+        return getInt(CONVERSION_THREADS_CONFIG);
+    }
+
+    public long conversionParallelMinBytes() {
+        return getLong(CONVERSION_PARALLEL_MIN_BYTES_CONFIG);
+    }
+
     public String outputFormat() {
         return getString(OUTPUT_FORMAT_CONFIG);
     }
+
+    public String avroSchemaMode() {
+        return getString(AVRO_SCHEMA_MODE_CONFIG);
+    }
+
+    public String jsonMode() {
+        return getString(JSON_MODE_CONFIG);
+    }
+
+    public boolean jsonBytes() {
+        return getBoolean(JSON_BYTES_CONFIG);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,238 @@
+package org.hifly.kafka.mongo.source;
+
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.MongoServerException;
+import com.mongodb.connection.ServerType;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.JmxReporter;
+import org.apache.kafka.common.metrics.KafkaMetricsContext;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.MetricsReporter;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.CumulativeCount;
+import org.apache.kafka.common.metrics.stats.CumulativeSum;
+import org.apache.kafka.common.metrics.stats.Max;
+import org.apache.kafka.common.metrics.stats.Percentile;
+import org.apache.kafka.common.metrics.stats.Percentiles;
+import org.apache.kafka.common.metrics.stats.Rate;
+import org.apache.kafka.common.utils.Time;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Kafka metrics of a MongoQuerySourceTask, exported through JMX as
+ * kafka.connect.mongo.source:type=mongo-source-task-metrics,connector=...,database=...,collection=...
+ *
+ * Query time and cursor batches come from the CommandListener of the task (find, aggregate and getMore commands),
+ * records and bytes emitted from poll().
+ * The command replies only carry the documents returned, not the documents examined by the server: the documents
+ * returned are the records emitted, there is no scanned count.
+ */
+public class MongoQuerySourceMetrics implements AutoCloseable {
+
+    public static final String JMX_NAMESPACE = "kafka.connect.mongo.source";
+    public static final String GROUP = "mongo-source-task-metrics";
+
+    // query time histogram: 0 - 60s, linear buckets
+    private static final int PERCENTILES_SIZE_BYTES = 4096;
+    private static final double PERCENTILES_MAX_MS = TimeUnit.SECONDS.toMillis(60);
+
+    // server error code of a command ended by maxTimeMS
+    private static final int MAX_TIME_MS_EXPIRED = 50;
+
+    private final Metrics metrics;
+    private final Map<String, String> tags;
+
+    private final Sensor pollQueryTime;
+    private final Sensor pollTime;
+    private final Sensor recordsEmitted;
+    private final Sensor recordsPerPoll;
+    private final Sensor bytesEmitted;
+    private final Sensor commandFailures;
+    private final Sensor cursorBatches;
+    private final Sensor secondaryReads;
+    private final Sensor maxTimeExpired;
+    private final Sensor pipelineProbes;
+    private final Sensor pipelineSkips;
+
+    // time spent in query commands since the last poll
+    private final AtomicLong queryNanos = new AtomicLong();
+
+    public MongoQuerySourceMetrics(String connector, String database, String collection, LongSupplier lastProcessedTs) {
+        this(connector, database, collection, lastProcessedTs,
+                Collections.singletonList(new JmxReporter()), Time.SYSTEM);
+    }
+
+    MongoQuerySourceMetrics(String connector, String database, String collection, LongSupplier lastProcessedTs,
+                            List<MetricsReporter> reporters, Time time) {
+        this.tags = new LinkedHashMap<>();
+        tags.put("connector", connector);
+        tags.put("database", database);
+        tags.put("collection", collection);
+
+        this.metrics = new Metrics(new MetricConfig(), reporters, time, new KafkaMetricsContext(JMX_NAMESPACE));
+
+        this.pollQueryTime = metrics.sensor("poll-query-time");
+        pollQueryTime.add(metricName("poll-query-time-avg", "Average time spent in Mongo query commands per poll in ms"), new Avg());
+        pollQueryTime.add(metricName("poll-query-time-max", "Maximum time spent in Mongo query commands per poll in ms"), new Max());
+        pollQueryTime.add(new Percentiles(PERCENTILES_SIZE_BYTES, 0, PERCENTILES_MAX_MS, Percentiles.BucketSizing.LINEAR,
+                new Percentile(metricName("poll-query-time-p50", "Median time spent in Mongo query commands per poll in ms"), 50),
+                new Percentile(metricName("poll-query-time-p95", "95th percentile of the time spent in Mongo query commands per poll in ms"), 95),
+                new Percentile(metricName("poll-query-time-p99", "99th percentile of the time spent in Mongo query commands per poll in ms"), 99)));
+
+        this.pollTime = metrics.sensor("poll-time");
+        pollTime.add(metricName("poll-time-avg", "Average poll() time in ms, excluding the wait for poll.interval.ms"), new Avg());
+        pollTime.add(metricName("poll-time-max", "Maximum poll() time in ms, excluding the wait for poll.interval.ms"), new Max());
+
+        this.recordsEmitted = metrics.sensor("records-emitted");
+        recordsEmitted.add(metricName("records-emitted-total", "Records returned by poll()"), new CumulativeSum());
+        recordsEmitted.add(metricName("records-emitted-rate", "Records returned by poll() per second"), new Rate());
+
+        this.recordsPerPoll = metrics.sensor("records-per-poll");
+        recordsPerPoll.add(metricName("records-per-poll-avg", "Average number of records returned by a poll()"), new Avg());
+        recordsPerPoll.add(metricName("records-per-poll-max", "Maximum number of records returned by a poll()"), new Max());
+
+        this.bytesEmitted = metrics.sensor("bytes-emitted");
+        bytesEmitted.add(metricName("bytes-emitted-total", "Size of the emitted record values"), new CumulativeSum());
+        bytesEmitted.add(metricName("bytes-emitted-rate", "Size of the emitted record values per second"), new Rate());
+
+        this.commandFailures = metrics.sensor("command-failures");
+        commandFailures.add(metricName("command-failures-total", "Failed Mongo commands"), new CumulativeSum());
+        commandFailures.add(metricName("command-failure-rate", "Failed Mongo commands per second"), new Rate());
+
+        this.cursorBatches = metrics.sensor("cursor-batches");
+        cursorBatches.add(metricName("cursor-batches-total", "Cursor batches read: find, aggregate and getMore replies"), new CumulativeCount());
+        cursorBatches.add(metricName("cursor-batch-size-avg", "Average number of documents per cursor batch"), new Avg());
+        cursorBatches.add(metricName("cursor-batch-size-max", "Maximum number of documents per cursor batch"), new Max());
+
+        this.secondaryReads = metrics.sensor("secondary-reads");
+        secondaryReads.add(metricName("secondary-reads-total", "Cursor batches read from a secondary"), new CumulativeSum());
+
+        this.maxTimeExpired = metrics.sensor("max-time-expired");
+        maxTimeExpired.add(metricName("max-time-expired-total", "Query commands ended by mongo.max.time.ms"), new CumulativeSum());
+
+        this.pipelineProbes = metrics.sensor("pipeline-probes");
+        pipelineProbes.add(metricName("pipeline-probes-total", "Probes run before mongo.pipeline"), new CumulativeSum());
+
+        this.pipelineSkips = metrics.sensor("pipeline-skips");
+        pipelineSkips.add(metricName("pipeline-skips-total", "Pipeline runs skipped: the probe found no new document"), new CumulativeSum());
+
+        metrics.addMetric(metricName("watermark-lag-ms", "Now minus the time field of the newest emitted document, NaN before the first one"),
+                (config, now) -> {
+                    long ts = lastProcessedTs.getAsLong();
+                    return ts > 0 ? now - ts : Double.NaN;
+                });
+    }
+
+    /*
+     Called by the CommandListener of the task
+     */
+    public void commandSucceeded(CommandSucceededEvent event) {
+        if (isQueryCommand(event.getCommandName())) {
+            recordCommand(event.getElapsedTime(TimeUnit.NANOSECONDS), batchSize(event.getResponse()),
+                    event.getConnectionDescription().getServerType() == ServerType.REPLICA_SET_SECONDARY);
+        }
+    }
+
+    public void commandFailed(CommandFailedEvent event) {
+        recordCommandFailure(event.getThrowable() instanceof MongoExecutionTimeoutException
+                || (event.getThrowable() instanceof MongoServerException
+                        && ((MongoServerException) event.getThrowable()).getCode() == MAX_TIME_MS_EXPIRED));
+    }
+
+    void recordCommand(long elapsedNanos, int documents, boolean secondary) {
+        queryNanos.addAndGet(elapsedNanos);
+        cursorBatches.record(documents);
+        if (secondary) {
+            secondaryReads.record();
+        }
+    }
+
+    void recordCommandFailure(boolean maxTimeMsExpired) {
+        commandFailures.record();
+        if (maxTimeMsExpired) {
+            maxTimeExpired.record();
+        }
+    }
+
+    /*
+     Gauges of the lookup.collections cache
+     */
+    public void registerLookupMetrics(MongoLookupJoin lookupJoin) {
+        metrics.addMetric(metricName("lookup-documents", "Documents of lookup.collections cached in memory"),
+                (config, now) -> lookupJoin.documents());
+        metrics.addMetric(metricName("lookup-refreshes-total", "Loads of a lookup.collections collection"),
+                (config, now) -> lookupJoin.refreshes());
+        metrics.addMetric(metricName("lookup-refresh-failures-total", "Failed loads of a lookup.collections collection"),
+                (config, now) -> lookupJoin.refreshFailures());
+    }
+
+    /*
+     Called after a mongo.pipeline.probe, hit: the pipeline runs
+     */
+    public void recordPipelineProbe(boolean hit) {
+        pipelineProbes.record();
+        if (!hit) {
+            pipelineSkips.record();
+        }
+    }
+
+    /*
+     Called at the end of each poll with its duration (wait excluded), the records returned and the size of their values
+     */
+    public void recordPoll(long pollNanos, int records, long bytes) {
+        pollTime.record(nanosToMillis(pollNanos));
+        pollQueryTime.record(nanosToMillis(queryNanos.getAndSet(0)));
+        recordsEmitted.record(records);
+        recordsPerPoll.record(records);
+        bytesEmitted.record(bytes);
+    }
+
+    public Metrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        metrics.close();
+    }
+
+    private static boolean isQueryCommand(String commandName) {
+        return "find".equals(commandName) || "aggregate".equals(commandName) || "getMore".equals(commandName);
+    }
+
+    /*
+     Documents in cursor.firstBatch (find, aggregate) or cursor.nextBatch (getMore)
+     */
+    private static int batchSize(BsonDocument response) {
+        BsonValue cursor = response != null ? response.get("cursor") : null;
+        if (cursor == null || !cursor.isDocument()) {
+            return 0;
+        }
+        BsonValue batch = cursor.asDocument().get("firstBatch");
+        if (batch == null) {
+            batch = cursor.asDocument().get("nextBatch");
+        }
+        return batch != null && batch.isArray() ? batch.asArray().size() : 0;
+    }
+
+    private static double nanosToMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private MetricName metricName(String name, String description) {
+        return metrics.metricName(name, GROUP, description, tags);
+    }
+}
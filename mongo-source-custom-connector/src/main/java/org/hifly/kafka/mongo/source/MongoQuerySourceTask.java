@@ -1,57 +1,111 @@
 package org.hifly.kafka.mongo.source;
 
-import com.mongodb.client.FindIterable;
-import com.mongodb.client.MongoClient;
-import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
-import com.mongodb.client.model.Filters;
-import com.mongodb.client.model.Sorts;
-import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
 import com.mongodb.ConnectionString;
-import com.mongodb.MongoClientSettings;
-import com.mongodb.client.MongoClients;
-import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandFailedEvent;
 import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.data.SchemaBuilder;
 import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.errors.ConnectException;
 import org.apache.kafka.connect.source.SourceRecord;
 import org.apache.kafka.connect.source.SourceTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.bson.Document;
-import org.bson.conversions.Bson;
-import org.bson.BsonArray;
 import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.conversions.Bson;
 
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.function.Function;
 
 public class MongoQuerySourceTask extends SourceTask {
 
     private static final Logger log = LoggerFactory.getLogger(MongoQuerySourceTask.class);
-    private static final Long INITIAL_TS = 0L;
 
-    private MongoClient client;
+    private static final long PREFETCH_DRAIN_TIMEOUT_MS = 1000L;
+    private static final long PREFETCH_STOP_TIMEOUT_MS = 5000L;
+    // max documents taken from the cursor batch for a parallel conversion
+    private static final int CONVERSION_BATCH = 1024;
+
+    private MongoClientRegistry.Lease clientLease;
     private MongoCollection<Document> collection;
     private MongoQuerySourceConfig config;
 
     private String topic;
     private String timeField;
-    private long pollIntervalMs;
-    private long lastPollTime;
+    private PollScheduler scheduler;
 
-    // Offset: last processed timestamp (epoch millis)
-    private Long lastProcessedTs;
+    // Offset: (time field, _id) of the last emitted document, null on first run
+    private MongoQueryOffset position;
+    // newest time field emitted (epoch millis), read by the metrics
+    private volatile long lastProcessedTs;
 
-    private enum OutputFormat { JSON, AVRO }
+    private MongoQuerySourceMetrics metrics;
+
+    private enum OutputFormat { JSON, AVRO, BSON }
 
     private OutputFormat outputFormat;
     private Schema keySchema;
     private Schema valueSchema;
 
-    private List<Bson> basePipeline;
-    private String pipelineJson;
     private String keyField;
+    private MongoQueryPlan plan;
+    private Class<?> documentClass;
+    private BsonSchemaInference schemaInference;
+
+    // prefetch.enabled
+    private PrefetchQueue prefetchQueue;
+    private Thread prefetchThread;
+    private volatile RuntimeException prefetchError;
+
+    // conversion.threads > 1
+    private ParallelConverter converter;
+    private Codec<Document> documentCodec;
+
+    // lookup.collections: lookup collections by name, read with the options of the source collection
+    private MongoLookupJoin lookupJoin;
+    private Function<String, MongoCollection<Document>> lookupCollections;
+
+    // backfill.slices > 1, until the backfill is done
+    private MongoBackfill backfill;
+    private String taskName;
+
+    // one renderer per converting thread: the polling thread, the prefetch thread or the conversion threads
+    private ThreadLocal<JsonRenderer> jsonRenderer;
+    private boolean jsonBytes;
+    // mongo.pipeline output without time.field warned
+    private boolean pipelineOutputWarned;
+
+    // commands run by the reading thread, bound around each read: the client is shared
+    private final CommandListener commandListener = new CommandListener() {
+        @Override
+        public void commandStarted(CommandStartedEvent event) {
+            if ("aggregate".equals(event.getCommandName())) {
+                log.debug("--- MONGODB AGGREGATION QUERY ---");
+                log.debug(event.getCommand().toJson());
+                log.debug("---------------------------------");
+            }
+        }
+
+        @Override
+        public void commandSucceeded(CommandSucceededEvent event) {
+            metrics.commandSucceeded(event);
+        }
+
+        @Override
+        public void commandFailed(CommandFailedEvent event) {
+            log.error("Query failed: " + event.getThrowable().getMessage());
+            metrics.commandFailed(event);
+        }
+    };
 
     private static final Schema AVRO_VALUE_SCHEMA = SchemaBuilder.struct()
             .name("MongoRecord")
@@ -67,43 +121,47 @@ public class MongoQuerySourceTask extends SourceTask {
 
     @Override
     public void start(Map<String, String> props) {
+        MongoQuerySourceConfig config = new MongoQuerySourceConfig(props);
+
+        // shared with the other tasks of the worker using the same uri and pool settings
+        this.clientLease = MongoClientRegistry.acquire(new ConnectionString(config.mongoUri()),
+                config.poolMaxSize(), config.poolMinSize(), config.poolMaxIdleMs());
+        try {
+            MongoDatabase database = clientLease.client().getDatabase(config.database());
+            start(props, database.getCollection(config.collection()), database::getCollection);
+        } catch (RuntimeException e) {
+            // index.check=fail or invalid settings: release the client and the metrics
+            stop();
+            throw e;
+        }
+    }
+
+    /*
+     Everything but the client: the collection is given, also used by the benchmarks
+     */
+    void start(Map<String, String> props, MongoCollection<Document> collection) {
+        start(props, collection, name -> {
+            throw new ConnectException("lookup.collections: no database to read " + name + " from");
+        });
+    }
+
+    private void start(Map<String, String> props, MongoCollection<Document> collection,
+                       Function<String, MongoCollection<Document>> lookupSource) {
         this.config = new MongoQuerySourceConfig(props);
 
-        String uri = config.mongoUri();
         String dbName = config.database();
         String collName = config.collection();
-        this.topic = config.topic();
-        this.timeField = config.timeField();
-        this.pollIntervalMs = config.pollIntervalMs();
-
-        ConnectionString connectionString = new ConnectionString(uri);
-
-        MongoClientSettings settings = MongoClientSettings.builder()
-                .applyConnectionString(connectionString)
-                .addCommandListener(new CommandListener() {
-                    @Override
-                    public void commandStarted(CommandStartedEvent event) {
-                        if ("aggregate".equals(event.getCommandName())) {
-                            log.debug("--- MONGODB AGGREGATION QUERY ---");
-                            log.debug(event.getCommand().toJson());
-                            log.debug("---------------------------------");
-                        }
-                    }
+        this.taskName = props.getOrDefault("name", collName);
 
-                    @Override
-                    public void commandSucceeded(com.mongodb.event.CommandSucceededEvent event) {}
-
-                    @Override
-                    public void commandFailed(com.mongodb.event.CommandFailedEvent event) {
-                        log.error("Query failed: " + event.getThrowable().getMessage());
-                    }
-                })
-                .build();
+        // "name" is the connector name, part of the task configs
+        this.metrics = new MongoQuerySourceMetrics(props.getOrDefault("name", collName), dbName, collName,
+                () -> lastProcessedTs);
 
+        this.topic = config.topic();
+        this.timeField = config.timeField();
+        this.scheduler = new PollScheduler(config.pollIntervalMs(), config.pollIntervalMaxMs(), config.pollJitter());
 
-        this.client = MongoClients.create(settings);
-        this.collection = client.getDatabase(dbName).getCollection(collName);
-        this.lastPollTime = System.currentTimeMillis();
+        this.collection = collection;
         this.keyField = config.keyField();
 
         String fmt = config.outputFormat().toLowerCase(Locale.ROOT);
@@ -111,224 +169,566 @@ public class MongoQuerySourceTask extends SourceTask {
             this.outputFormat = OutputFormat.AVRO;
             this.keySchema = Schema.STRING_SCHEMA;
             this.valueSchema = AVRO_VALUE_SCHEMA;
+            if (MongoQuerySourceConfig.AVRO_SCHEMA_MODE_INFERRED.equals(config.avroSchemaMode())) {
+                this.schemaInference = new BsonSchemaInference(BsonSchemaInference.recordName(dbName, collName));
+            }
+        } else if (MongoQuerySourceConfig.OUTPUT_FORMAT_BSON.equals(fmt)) {
+            this.outputFormat = OutputFormat.BSON;
+            this.keySchema = Schema.STRING_SCHEMA;
+            this.valueSchema = Schema.BYTES_SCHEMA;
         } else {
             this.outputFormat = OutputFormat.JSON;
             this.keySchema = Schema.STRING_SCHEMA;
-            this.valueSchema = Schema.STRING_SCHEMA;
+            this.jsonBytes = config.jsonBytes();
+            this.valueSchema = jsonBytes ? Schema.BYTES_SCHEMA : Schema.STRING_SCHEMA;
         }
+        JsonRenderer.Mode jsonMode = JsonRenderer.mode(config.jsonMode());
+        this.jsonRenderer = ThreadLocal.withInitial(() -> new JsonRenderer(jsonMode));
 
-        this.pipelineJson = config.pipelineJson();
-        this.basePipeline = parsePipeline(pipelineJson);
+        if (config.conversionThreads() > 1) {
+            this.converter = new ParallelConverter(config.conversionThreads(), config.conversionParallelMinBytes(),
+                    "mongo-source-conversion-" + props.getOrDefault("name", collName));
+        }
 
-        // Read previous offset
-        Map<String, Object> partition = sourcePartition(dbName, collName);
-        Map<String, Object> offset = context.offsetStorageReader().offset(partition);
-
-        if (offset != null && offset.get("lastProcessedTs") != null) {
-            Object tsObj = offset.get("lastProcessedTs");
-            if (tsObj instanceof Long) {
-                this.lastProcessedTs = (Long) tsObj;
-            } else if (tsObj instanceof Integer) {
-                this.lastProcessedTs = ((Integer) tsObj).longValue();
-            } else if (tsObj instanceof String) {
-                this.lastProcessedTs = Long.parseLong((String) tsObj);
-            } else {
-                log.warn("{}. Ignore offset.", tsObj.getClass());
-                this.lastProcessedTs = INITIAL_TS;
-            }
-        } else {
-            this.lastProcessedTs = INITIAL_TS; // first run
+        // bson: documents are not decoded, fields are read from the raw buffer when needed.
+        // Parallel conversion: documents are decoded by the conversion threads
+        this.documentClass = outputFormat == OutputFormat.BSON || converter != null ? RawBsonDocument.class : Document.class;
+        this.plan = new MongoQueryPlan(config);
+        this.collection = plan.readFrom(collection);
+
+        List<MongoLookupJoin.Lookup> lookups = MongoLookupJoin.parse(config.lookupCollectionsJson());
+        if (!lookups.isEmpty()) {
+            this.lookupJoin = new MongoLookupJoin(lookups, config.lookupCacheTtlMs(), config.lookupCacheMaxDocuments());
+            this.lookupCollections = name -> plan.readFrom(lookupSource.apply(name));
+            lookupJoin.refresh(lookupCollections);
+            metrics.registerLookupMetrics(lookupJoin);
+        }
+        if (converter != null || lookupJoin != null) {
+            this.documentCodec = collection.getCodecRegistry().get(Document.class);
         }
 
+        // Read previous offset
+        // null on first run
+        this.position = MongoQueryOffset.fromMap(context.offsetStorageReader().offset(plan.partition()));
+        this.lastProcessedTs = position != null ? position.millis() : 0L;
+
+        new MongoIndexCheck(MongoIndexCheck.mode(config.indexCheck())).check(this.collection, plan, position);
+
         log.info("MongoQuerySourceTask started. topic={}, db={}, coll={}, timeField={}, " +
-                        "pollIntervalMs={}, outputFormat={}, lastProcessedTs={}",
-                topic, dbName, collName, timeField, pollIntervalMs, outputFormat, lastProcessedTs);
+                        "pollIntervalMs={}, pollIntervalMaxMs={}, pollMaxRecords={}, outputFormat={}, offset={}, " +
+                        "readPreference={}, batchSize={}, maxTimeMs={}",
+                topic, dbName, collName, timeField, config.pollIntervalMs(), config.pollIntervalMaxMs(),
+                config.pollMaxRecords(), outputFormat, position,
+                this.collection.getReadPreference().getName(), config.batchSize(), config.maxTimeMs());
+
+        // on first run, and on a restart during a backfill
+        if (config.backfillSlices() > 1 && (position == null || position.backfillEnd() != null)) {
+            this.backfill = startBackfill();
+        }
+        if (backfill == null) {
+            startPrefetch();
+        }
+    }
+
+    private void startPrefetch() {
+        if (config.prefetchEnabled()) {
+            this.prefetchQueue = new PrefetchQueue(config.prefetchQueueMaxRecords(), config.prefetchQueueMaxBytes());
+            this.prefetchThread = new Thread(this::prefetch, "mongo-source-prefetch-" + taskName);
+            prefetchThread.setDaemon(true);
+            prefetchThread.start();
+        }
+    }
+
+    /*
+     Slices from the position up to the time field of the last document (backfillEnd on a restart), null when
+     there is nothing to split: the documents are read by the incremental polls
+     */
+    private MongoBackfill startBackfill() {
+        if (plan.aggregates() || schemaInference != null) {
+            log.warn("backfill.slices is not applied with mongo.pipeline or inferred avro schemas");
+            return null;
+        }
+        Object end = position != null ? position.backfillEnd().ts() : plan.lastTime(collection);
+        Object first = position != null && position.ts() != null ? null : plan.firstTime(collection);
+        List<Bson> ranges = MongoBackfill.ranges(timeField, position, first, end, config.backfillSlices());
+        if (ranges.isEmpty()) {
+            log.info("Backfill: nothing to split up to {}, incremental polling", end);
+            return null;
+        }
+        MongoQueryOffset backfillEnd = MongoQueryOffset.of(end, null);
+        log.info("Backfill from {} up to {} in {} slices", position, end, ranges.size());
+        return new MongoBackfill(ranges, config.backfillSliceQueueMaxRecords(), config.backfillSliceQueueMaxBytes(),
+                (range, queue) -> readSlice(range, queue, backfillEnd), "mongo-source-backfill-" + taskName);
     }
 
     @Override
     public List<SourceRecord> poll() throws InterruptedException {
-        long now = System.currentTimeMillis();
-        long elapsed = now - lastPollTime;
-
-        log.debug("Last Poll Time {} - Elapsed {}", lastPollTime, elapsed);
+        if (backfill != null) {
+            return pollBackfill();
+        }
+        if (prefetchQueue != null) {
+            return drainPrefetched();
+        }
 
-        if (elapsed < pollIntervalMs) {
-           long sleepMs = pollIntervalMs - elapsed;
-           log.info("Sleeping {} ms before next poll", sleepMs);
-           Thread.sleep(sleepMs);
+        if (log.isDebugEnabled()) {
+            log.debug("Waiting {} ms before next poll", scheduler.delayMs(System.currentTimeMillis()));
+        }
+        if (!scheduler.awaitNextPoll(System.currentTimeMillis())) {
+            // stopped while waiting
+            return Collections.emptyList();
         }
 
-        lastPollTime = System.currentTimeMillis();
+        long pollStart = System.nanoTime();
 
-        String baseFilterJson = config.baseFilterJson();
-        Bson baseFilter;
-        try {
-            baseFilter = Document.parse(baseFilterJson);
-        } catch (Exception e) {
-            log.warn("Can't parse mongo.base.filter='{}'. Empty filter. Errore: {}", baseFilterJson, e.getMessage());
-            baseFilter = new Document();
-        }
+        List<SourceRecord> records = new ArrayList<>();
+        Fetch fetch = read(position, (record, size) -> records.add(record));
 
-        Iterable<Document> cursor;
+        // moved to the last record only when the records are returned
+        position = fetch.last;
+        lastProcessedTs = Math.max(lastProcessedTs, fetch.maxTs);
+        metrics.recordPoll(System.nanoTime() - pollStart, fetch.records, fetch.bytes);
+        scheduler.completed(fetch.records, plan.maxRecords(), System.currentTimeMillis());
+
+        log.debug("Output Format: {} record", outputFormat.name().toLowerCase(Locale.ROOT));
+        log.debug("Poll done: {} record", records.size());
 
-        // Pipeline
-        if (!basePipeline.isEmpty()) {
-            List<Bson> effectivePipeline = new ArrayList<>();
+        return records;
+    }
 
-            if (!baseFilter.toBsonDocument(Document.class, collection.getCodecRegistry()).isEmpty()) {
-                effectivePipeline.add(Aggregates.match(baseFilter));
+    @Override
+    public void stop() {
+        log.info("Stop MongoQuerySourceTask");
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+        if (backfill != null) {
+            backfill.close();
+        }
+        if (prefetchQueue != null) {
+            prefetchQueue.close();
+        }
+        if (prefetchThread != null) {
+            prefetchThread.interrupt();
+            try {
+                prefetchThread.join(PREFETCH_STOP_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
+        }
+        if (converter != null) {
+            converter.close();
+        }
+        if (clientLease != null) {
+            clientLease.close();
+        }
+        if (metrics != null) {
+            metrics.close();
+        }
+    }
 
-            effectivePipeline.addAll(basePipeline);
+    /*
+     Prefetch thread: the same reads as poll(), the records go to the queue.
+     With prefetch, the poll metrics are recorded by this thread, once per read.
+     */
+    private void prefetch() {
+        MongoQueryOffset readerPosition = position;
+        try {
+            while (scheduler.awaitNextPoll(System.currentTimeMillis())) {
+                long readStart = System.nanoTime();
+                Fetch fetch = read(readerPosition, prefetchQueue::put);
+                readerPosition = fetch.last;
+                metrics.recordPoll(System.nanoTime() - readStart, fetch.records, fetch.bytes);
+                scheduler.completed(fetch.records, plan.maxRecords(), System.currentTimeMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Prefetch failed: " + e.getMessage(), e);
+            prefetchError = e;
+            prefetchQueue.close();
+        }
+    }
 
-            log.debug("effectivePipeline {}", effectivePipeline);
+    private List<SourceRecord> drainPrefetched() throws InterruptedException {
+        int max = plan.maxRecords() > 0 ? plan.maxRecords() : Integer.MAX_VALUE;
+        List<SourceRecord> records = prefetchQueue.drain(max, PREFETCH_DRAIN_TIMEOUT_MS);
+        if (records.isEmpty() && prefetchError != null) {
+            throw new ConnectException("Prefetch from Mongo failed", prefetchError);
+        }
 
-            long nowPipeline = System.currentTimeMillis();
-            cursor = collection.aggregate(effectivePipeline);
-            long endPipeline = System.currentTimeMillis();
+        long maxTs = lastProcessedTs;
+        for (SourceRecord record : records) {
+            maxTs = Math.max(maxTs, (Long) record.sourceOffset().get(MongoQueryOffset.LAST_PROCESSED_TS));
+        }
+        lastProcessedTs = maxTs;
 
-            log.debug("Pipeline executed elapsed time={}", endPipeline - nowPipeline);
+        log.debug("Poll done: {} prefetched record", records.size());
+        return records;
+    }
 
-        } else {
-            // No pipeline
-            if (!baseFilter.toBsonDocument(Document.class, collection.getCodecRegistry()).isEmpty()) {
-                cursor = collection.find(baseFilter).sort(Sorts.ascending(timeField));
-            } else {
-                cursor = collection.find().sort(Sorts.ascending(timeField));
-            }
+    /*
+     Records of the current backfill slice. Then the polls go on from the last backfill record
+     */
+    private List<SourceRecord> pollBackfill() throws InterruptedException {
+        long pollStart = System.nanoTime();
+        if (lookupJoin != null) {
+            lookupJoin.refresh(lookupCollections);
         }
+        int max = plan.maxRecords() > 0 ? plan.maxRecords() : Integer.MAX_VALUE;
+        List<SourceRecord> records = backfill.drain(max, PREFETCH_DRAIN_TIMEOUT_MS);
+
+        long bytes = 0;
+        long maxTs = lastProcessedTs;
+        for (SourceRecord record : records) {
+            bytes += valueSize(record.value());
+            maxTs = Math.max(maxTs, (Long) record.sourceOffset().get(MongoQueryOffset.LAST_PROCESSED_TS));
+        }
+        lastProcessedTs = maxTs;
+        metrics.recordPoll(System.nanoTime() - pollStart, records.size(), bytes);
 
-        List<SourceRecord> records = new ArrayList<>();
-        int counter = 0;
-
-        for (Document doc : cursor) {
+        if (backfill.done()) {
+            if (backfill.lastPosition() != null) {
+                position = backfill.lastPosition();
+            }
+            backfill.close();
+            backfill = null;
+            log.info("Backfill done at {}, incremental polling", position);
+            startPrefetch();
+        }
+        return records;
+    }
 
-            log.debug("Document to be fetched {} - counter  {}", doc, counter);
+    /*
+     Backfill slice thread: the documents of range, in order, to queue
+     */
+    private MongoQueryOffset readSlice(Bson range, PrefetchQueue queue, MongoQueryOffset backfillEnd)
+            throws InterruptedException {
+        MongoQueryOffset last = null;
+        MongoClientRegistry.bindCommandListener(commandListener);
+        try (MongoCursor<?> cursor = plan.querySlice(collection, documentClass, range).iterator()) {
+            while (cursor.hasNext()) {
+                Converted converted = toRecord(cursor.next(), backfillEnd);
+                if (!queue.put(converted.record, valueSize(converted.record.value()))) {
+                    break;
+                }
+                last = converted.offset;
+            }
+        } finally {
+            MongoClientRegistry.unbindCommandListener();
+        }
+        return last;
+    }
 
-            Object tsObj = doc.get(timeField);
-            Long ts = null;
-            if (tsObj instanceof Date) {
-                ts = ((Date) tsObj).getTime();
+    /*
+     Reads the documents after from and passes the records to sink, until the cursor or the sink ends
+     */
+    private Fetch read(MongoQueryOffset from, RecordSink sink) throws InterruptedException {
+        if (lookupJoin != null) {
+            // outside the command listener: the metrics describe the source collection
+            lookupJoin.refresh(lookupCollections);
+        }
+        MongoClientRegistry.bindCommandListener(commandListener);
+        try {
+            if (from != null && plan.probes()) {
+                boolean hit = plan.hasNewDocuments(collection, from);
+                metrics.recordPipelineProbe(hit);
+                if (!hit) {
+                    log.debug("Pipeline skipped: no document after {}", from);
+                    return new Fetch(from);
+                }
             }
+            return converter != null ? readBatches(from, sink) : readDocuments(from, sink);
+        } finally {
+            MongoClientRegistry.unbindCommandListener();
+        }
+    }
+
+    private Fetch readDocuments(MongoQueryOffset from, RecordSink sink) throws InterruptedException {
+        Fetch fetch = new Fetch(from);
 
-            Object keyValueObj = extractKeyFromDocument(doc);
+        try (MongoCursor<?> cursor = plan.query(collection, documentClass, from).iterator()) {
+            while (cursor.hasNext()) {
+                Converted converted = toRecord(cursor.next(), null);
+                checkPipelineOutput(converted.offset);
 
-            String key;
-            if (keyValueObj == null) {
-                log.warn("mongo.key.field='{}'. Fallback on _id. doc={}", keyField, doc.toJson());
-                Object fallbackId = doc.get("_id");
-                key = (fallbackId != null) ? String.valueOf(fallbackId) : null;
-            } else {
-                key = String.valueOf(keyValueObj);
+                long size = valueSize(converted.record.value());
+                if (!sink.accept(converted.record, size)) {
+                    break;
+                }
+                fetch.add(converted.offset, size);
             }
+        }
+        return fetch;
+    }
 
-            log.debug("Document to be fetched, key {} - counter  {}", key, counter);
+    /*
+     read() with conversion.threads > 1: the documents of each cursor batch are converted by the ParallelConverter
+     */
+    private Fetch readBatches(MongoQueryOffset from, RecordSink sink) throws InterruptedException {
+        Fetch fetch = new Fetch(from);
+        List<RawBsonDocument> batch = new ArrayList<>();
+
+        try (MongoCursor<RawBsonDocument> cursor = plan.query(collection, RawBsonDocument.class, from).iterator()) {
+            while (cursor.hasNext()) {
+                batch.clear();
+                long batchBytes = 0;
+                // hasNext() fetched the batch, at least 1 available
+                int n = Math.max(1, Math.min(cursor.available(), CONVERSION_BATCH));
+                for (int i = 0; i < n && cursor.hasNext(); i++) {
+                    RawBsonDocument raw = cursor.next();
+                    batch.add(raw);
+                    batchBytes += raw.getByteBuffer().remaining();
+                }
+
+                for (Converted converted : converter.convert(batch, batchBytes, this::convert)) {
+                    // schema inference is stateful: sequential, in order
+                    SourceRecord record = converted.record != null
+                            ? converted.record
+                            : documentRecord(converted.document, converted.offset);
+                    checkPipelineOutput(converted.offset);
+                    long size = valueSize(record.value());
+                    if (!sink.accept(record, size)) {
+                        return fetch;
+                    }
+                    fetch.add(converted.offset, size);
+                }
+            }
+        }
+        return fetch;
+    }
 
-            Map<String, Object> partition = sourcePartition(
-                    collection.getNamespace().getDatabaseName(),
-                    collection.getNamespace().getCollectionName());
+    /*
+     Document of a cursor (Document, or RawBsonDocument for bson) to record, on the reading thread.
+     backfillEnd: in the offset of the backfill records, null otherwise
+     */
+    private Converted toRecord(Object next, MongoQueryOffset backfillEnd) {
+        if (next instanceof RawBsonDocument) {
+            return convert((RawBsonDocument) next, backfillEnd);
+        }
+        Document doc = (Document) next;
+        if (lookupJoin != null) {
+            lookupJoin.join(doc);
+        }
+        MongoQueryOffset offset = offset(doc.get(timeField), doc.get("_id"), backfillEnd);
+        return new Converted(offset, documentRecord(doc, offset), null);
+    }
 
-            Map<String, Object> offset = Collections.singletonMap(
-                    "lastProcessedTs",
-                    ts != null ? ts : 0L
-            );
+    // on a conversion thread
+    private Converted convert(RawBsonDocument raw) {
+        return convert(raw, null);
+    }
 
-            SourceRecord record;
-
-            if (outputFormat == OutputFormat.JSON) {
-                String valueJson = doc.toJson();
-                record = new SourceRecord(
-                        partition,
-                        offset,
-                        topic,
-                        keySchema,
-                        key,
-                        valueSchema,
-                        valueJson
-                );
-            } else {
-                String valueJson = doc.toJson();
-                Struct valueStruct = new Struct(AVRO_VALUE_SCHEMA)
-                        .put("_id", doc.get("_id") != null ? doc.get("_id").toString() : null)
-                        .put("payload", valueJson)
-                        .put("timestamp", ts != null ? ts : 0L);
-
-                record = new SourceRecord(
-                        partition,
-                        offset,
-                        topic,
-                        keySchema,
-                        key,
-                        valueSchema,
-                        valueStruct
-                );
+    private Converted convert(RawBsonDocument raw, MongoQueryOffset backfillEnd) {
+        if (outputFormat == OutputFormat.BSON) {
+            if (lookupJoin != null) {
+                raw = lookupJoin.join(raw, documentCodec);
             }
+            MongoQueryOffset offset = offset(raw.get(timeField), raw.get("_id"), backfillEnd);
+            return new Converted(offset, rawRecord(raw, offset), null);
+        }
+        Document doc = raw.decode(documentCodec);
+        if (lookupJoin != null) {
+            lookupJoin.join(doc);
+        }
+        MongoQueryOffset offset = offset(doc.get(timeField), doc.get("_id"), backfillEnd);
+        if (schemaInference != null) {
+            return new Converted(offset, null, doc);
+        }
+        return new Converted(offset, documentRecord(doc, offset), null);
+    }
+
+    /*
+     The position of the records is taken from the pipeline output: without time.field, only the documents after
+     the last _id are read, changed ones ($group, $project results) are not read again
+     */
+    private void checkPipelineOutput(MongoQueryOffset offset) {
+        if (pipelineOutputWarned || !plan.aggregates() || offset.ts() != null) {
+            return;
+        }
+        pipelineOutputWarned = true;
+        log.warn("mongo.pipeline: output document _id={} has no {}: the pipeline output must keep time.field and _id "
+                + "of the collection documents, documents changed after being emitted are not read again",
+                offset.id(), timeField);
+    }
 
-            records.add(record);
-            counter++;
+    private static MongoQueryOffset offset(Object ts, Object id, MongoQueryOffset backfillEnd) {
+        MongoQueryOffset offset = MongoQueryOffset.of(ts, id);
+        return backfillEnd != null ? offset.backfilling(backfillEnd) : offset;
+    }
+
+    private SourceRecord documentRecord(Document doc, MongoQueryOffset offset) {
+        if (log.isDebugEnabled()) {
+            log.debug("Document to be fetched {}", doc);
         }
 
+        Object id = doc.get("_id");
+        Object keyValueObj = plan.key(doc);
 
-        log.debug("Output Format: {} record", outputFormat == OutputFormat.JSON? "json":"avro");
-        log.debug("Poll done: {} record", records.size());
+        String key;
+        if (keyValueObj == null) {
+            log.warn("mongo.key.field='{}'. Fallback on _id. doc={}", keyField, doc.toJson());
+            key = (id != null) ? String.valueOf(id) : null;
+        } else {
+            key = String.valueOf(keyValueObj);
+        }
 
-        return records;
+        if (log.isDebugEnabled()) {
+            log.debug("Document to be fetched, key {}", key);
+        }
+
+        if (outputFormat == OutputFormat.JSON) {
+            return new SourceRecord(
+                    plan.partition(),
+                    offset.toMap(),
+                    topic,
+                    keySchema,
+                    key,
+                    valueSchema,
+                    jsonBytes ? jsonRenderer.get().toJsonBytes(doc) : jsonRenderer.get().toJson(doc)
+            );
+        } else if (schemaInference != null) {
+            Schema schema = schemaInference.schema(doc);
+            return new SourceRecord(
+                    plan.partition(),
+                    offset.toMap(),
+                    topic,
+                    keySchema,
+                    key,
+                    schema,
+                    schemaInference.toStruct(doc, schema)
+            );
+        } else {
+            Struct valueStruct = new Struct(AVRO_VALUE_SCHEMA)
+                    .put("_id", id != null ? id.toString() : null)
+                    .put("payload", jsonRenderer.get().toJson(doc))
+                    .put("timestamp", offset.millis());
+
+            return new SourceRecord(
+                    plan.partition(),
+                    offset.toMap(),
+                    topic,
+                    keySchema,
+                    key,
+                    valueSchema,
+                    valueStruct
+            );
+        }
     }
 
-    @Override
-    public void stop() {
-        log.info("Stop MongoQuerySourceTask");
-        if (client != null) {
-            client.close();
+    /*
+     Size of the record value as emitted: JSON length, BSON bytes or payload of the fixed avro Struct. 0 for inferred Structs
+     */
+    private static long valueSize(Object value) {
+        if (value instanceof String) {
+            return ((String) value).length();
         }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        if (value instanceof Struct && ((Struct) value).schema() == AVRO_VALUE_SCHEMA) {
+            return ((Struct) value).getString("payload").length();
+        }
+        return 0L;
     }
 
-    private Map<String, Object> sourcePartition(String db, String coll) {
-        Map<String, Object> partition = new HashMap<>();
-        partition.put("db", db);
-        partition.put("collection", coll);
-        return partition;
+    // receives the records of a read, false to stop reading
+    private interface RecordSink {
+        boolean accept(SourceRecord record, long size) throws InterruptedException;
     }
 
-    private List<Bson> parsePipeline(String json) {
-        if (json == null || json.trim().isEmpty() || json.trim().equals("[]")) {
-            return Collections.emptyList();
+    // document converted by a conversion thread: the record, or the decoded document for schema inference
+    private static final class Converted {
+        private final MongoQueryOffset offset;
+        private final SourceRecord record;
+        private final Document document;
+
+        private Converted(MongoQueryOffset offset, SourceRecord record, Document document) {
+            this.offset = offset;
+            this.record = record;
+            this.document = document;
         }
-        try {
-            BsonArray array = BsonArray.parse(json);
-            List<Bson> stages = new ArrayList<>(array.size());
-            for (BsonValue v : array) {
-                stages.add(v.asDocument());
-            }
-            return stages;
-        } catch (Exception e) {
-            log.warn("Can't parse mongo.pipeline='{}'. Empty pipeline. Error: {}", json, e.getMessage());
-            return Collections.emptyList();
+    }
+
+    // outcome of a read
+    private static final class Fetch {
+        private MongoQueryOffset last;
+        private long maxTs;
+        private int records;
+        private long bytes;
+
+        private Fetch(MongoQueryOffset from) {
+            this.last = from;
+        }
+
+        private void add(MongoQueryOffset offset, long size) {
+            last = offset;
+            maxTs = Math.max(maxTs, offset.millis());
+            records++;
+            bytes += size;
         }
     }
 
-    private Object extractKeyFromDocument(Document doc) {
-        if (keyField == null || keyField.isEmpty()) {
-            // fallback: _id
-            return doc.get("_id");
+    private SourceRecord rawRecord(RawBsonDocument doc, MongoQueryOffset offset) {
+        BsonValue keyValue = plan.key(doc);
+        String key;
+        if (keyValue == null) {
+            BsonValue fallbackId = doc.get("_id");
+            log.warn("mongo.key.field='{}'. Fallback on _id. _id={}", keyField, fallbackId);
+            key = fallbackId != null ? keyString(fallbackId) : null;
+        } else {
+            key = keyString(keyValue);
         }
 
-        if (!keyField.contains(".")) {
-            return doc.get(keyField);
+        return new SourceRecord(
+                plan.partition(),
+                offset.toMap(),
+                topic,
+                keySchema,
+                key,
+                valueSchema,
+                rawBytes(doc)
+        );
+    }
+
+    /*
+     Bytes of the document, without copy when it spans its whole backing array
+     */
+    private static byte[] rawBytes(RawBsonDocument doc) {
+        ByteBuffer buffer = doc.getByteBuffer().asNIO();
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
         }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
 
-        // Dotted path: es. "customer.id"
-        String[] parts = keyField.split("\\.");
-        Object current = doc;
-        for (String part : parts) {
-            if (!(current instanceof Document)) {
-                return null;
-            }
-            current = ((Document) current).get(part);
-            if (current == null) {
-                return null;
-            }
+    /*
+     Same key string as String.valueOf() of the decoded value for the common _id and key types
+     */
+    private static String keyString(BsonValue value) {
+        switch (value.getBsonType()) {
+            case STRING:
+                return value.asString().getValue();
+            case OBJECT_ID:
+                return value.asObjectId().getValue().toHexString();
+            case INT32:
+                return String.valueOf(value.asInt32().getValue());
+            case INT64:
+                return String.valueOf(value.asInt64().getValue());
+            case DOUBLE:
+                return String.valueOf(value.asDouble().getValue());
+            case BOOLEAN:
+                return String.valueOf(value.asBoolean().getValue());
+            case DECIMAL128:
+                return value.asDecimal128().getValue().toString();
+            case DATE_TIME:
+                return String.valueOf(new Date(value.asDateTime().getValue()));
+            case DOCUMENT:
+                return value.asDocument().toJson();
+            default:
+                return value.toString();
         }
-        return current;
     }
-}
\ No newline at end of file
+}
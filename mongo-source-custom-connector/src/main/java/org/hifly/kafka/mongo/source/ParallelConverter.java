@@ -0,0 +1,93 @@
+package org.hifly.kafka.mongo.source;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Converts a batch of documents on a fixed pool of worker threads, results in the order of the batch.
+ *
+ * The batch is split in one contiguous slice per thread. Batches whose documents are smaller than minBytes on average
+ * are converted by the calling thread: for small documents the hand-off costs more than the conversion.
+ */
+public class ParallelConverter implements AutoCloseable {
+
+    private final int threads;
+    private final long minBytes;
+    private final ExecutorService pool;
+
+    public ParallelConverter(int threads, long minBytes, String name) {
+        this.threads = threads;
+        this.minBytes = minBytes;
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /*
+     totalBytes: size of the batch documents
+     */
+    public <T, R> List<R> convert(List<T> batch, long totalBytes, Function<T, R> conversion) throws InterruptedException {
+        int n = batch.size();
+        if (n < 2 || totalBytes < minBytes * n) {
+            List<R> results = new ArrayList<>(n);
+            for (T item : batch) {
+                results.add(conversion.apply(item));
+            }
+            return results;
+        }
+
+        Object[] results = new Object[n];
+        int slices = Math.min(threads, n);
+        List<Future<?>> futures = new ArrayList<>(slices);
+        for (int s = 0; s < slices; s++) {
+            int from = (int) ((long) n * s / slices);
+            int to = (int) ((long) n * (s + 1) / slices);
+            futures.add(pool.submit(() -> {
+                for (int i = from; i < to; i++) {
+                    results[i] = conversion.apply(batch.get(i));
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<R> converted = (List<R>) Arrays.asList(results);
+        return converted;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
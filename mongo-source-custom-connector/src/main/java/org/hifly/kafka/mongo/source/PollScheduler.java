@@ -0,0 +1,76 @@
+package org.hifly.kafka.mongo.source;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+/**
+ * When a MongoQuerySourceTask polls next.
+ *
+ * - full poll (maxRecords records): next poll at once, there is a backlog
+ * - poll with records: intervalMs
+ * - consecutive empty polls: intervalMs, 2 * intervalMs, 4 * intervalMs... up to maxIntervalMs
+ *
+ * Each wait is shortened by a random share up to jitter. Waits end at once on stop().
+ */
+public class PollScheduler {
+
+    private final long intervalMs;
+    private final long maxIntervalMs;
+    private final double jitter;
+    private final DoubleSupplier random;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    private int emptyPolls;
+    private long nextPollMs;
+
+    public PollScheduler(long intervalMs, long maxIntervalMs, double jitter) {
+        this(intervalMs, maxIntervalMs, jitter, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    PollScheduler(long intervalMs, long maxIntervalMs, double jitter, DoubleSupplier random) {
+        this.intervalMs = intervalMs;
+        this.maxIntervalMs = Math.max(intervalMs, maxIntervalMs);
+        this.jitter = jitter;
+        this.random = random;
+    }
+
+    /*
+     Wait for the next poll, false if stopped
+     */
+    public boolean awaitNextPoll(long nowMs) throws InterruptedException {
+        long delayMs = delayMs(nowMs);
+        if (delayMs <= 0) {
+            return stopped.getCount() > 0;
+        }
+        return !stopped.await(delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void completed(int records, int maxRecords, long nowMs) {
+        if (maxRecords > 0 && records >= maxRecords) {
+            emptyPolls = 0;
+            nextPollMs = nowMs;
+            return;
+        }
+        emptyPolls = records > 0 ? 0 : emptyPolls + 1;
+        long delayMs = backoffMs(emptyPolls);
+        nextPollMs = nowMs + delayMs - (long) (delayMs * jitter * random.getAsDouble());
+    }
+
+    public void stop() {
+        stopped.countDown();
+    }
+
+    long delayMs(long nowMs) {
+        return Math.max(0, nextPollMs - nowMs);
+    }
+
+    long backoffMs(int emptyPolls) {
+        long delayMs = intervalMs;
+        for (int i = 1; i < emptyPolls && delayMs > 0 && delayMs < maxIntervalMs; i++) {
+            delayMs *= 2;
+        }
+        return Math.min(delayMs, maxIntervalMs);
+    }
+}
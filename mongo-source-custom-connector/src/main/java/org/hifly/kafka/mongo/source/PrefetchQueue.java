@@ -0,0 +1,122 @@
+package org.hifly.kafka.mongo.source;
+
+import org.apache.kafka.connect.source.SourceRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Records read ahead by the prefetch thread of a MongoQuerySourceTask, drained by poll().
+ *
+ * Bounded by records and by bytes (size of the record values): put() blocks while either limit is reached.
+ * A record is always accepted by an empty queue, also when it is larger than maxBytes.
+ * close() wakes up both sides: put() returns false, drain() returns what is left without waiting.
+ */
+public class PrefetchQueue {
+
+    private final long maxBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+
+    // ring buffer: record and value size
+    private final SourceRecord[] records;
+    private final long[] sizes;
+    private int head;
+    private int count;
+    private long bytes;
+    private boolean closed;
+
+    public PrefetchQueue(int maxRecords, long maxBytes) {
+        this.records = new SourceRecord[maxRecords];
+        this.sizes = new long[maxRecords];
+        this.maxBytes = maxBytes;
+    }
+
+    /*
+     false if the queue was closed
+     */
+    public boolean put(SourceRecord record, long size) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (!closed && count > 0 && (count == records.length || bytes + size > maxBytes)) {
+                notFull.await();
+            }
+            if (closed) {
+                return false;
+            }
+            int tail = (head + count) % records.length;
+            records[tail] = record;
+            sizes[tail] = size;
+            count++;
+            bytes += size;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     Up to max records, waits up to timeoutMs for the first one
+     */
+    public List<SourceRecord> drain(int max, long timeoutMs) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (count == 0 && !closed && remainingNanos > 0) {
+                remainingNanos = notEmpty.awaitNanos(remainingNanos);
+            }
+            if (count == 0) {
+                return Collections.emptyList();
+            }
+            int n = Math.min(max, count);
+            List<SourceRecord> drained = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                drained.add(records[head]);
+                records[head] = null;
+                bytes -= sizes[head];
+                head = (head + 1) % records.length;
+            }
+            count -= n;
+            notFull.signalAll();
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long bytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
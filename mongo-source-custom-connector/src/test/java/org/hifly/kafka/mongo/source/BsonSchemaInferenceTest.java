@@ -0,0 +1,146 @@
+package org.hifly.kafka.mongo.source;
+
+import org.apache.kafka.connect.data.Decimal;
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.data.Timestamp;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BsonSchemaInferenceTest {
+
+    private final BsonSchemaInference inference =
+            new BsonSchemaInference(BsonSchemaInference.recordName("testdb", "misure-dettaglio"));
+
+    @Test
+    void testBsonTypes() {
+        ObjectId id = new ObjectId();
+        Date ts = new Date();
+        Document doc = new Document("_id", id)
+                .append("lastUpdateTime", ts)
+                .append("amount", new Decimal128(new BigDecimal("12.34")))
+                .append("count", 3)
+                .append("total", 10L)
+                .append("ratio", 0.5)
+                .append("active", true)
+                .append("status", "ACTIVE")
+                .append("customer", new Document("id", "C-1"))
+                .append("tags", Arrays.asList("a", "b"));
+
+        Schema schema = inference.schema(doc);
+        assertEquals("org.hifly.kafka.mongo.testdb.misure_dettaglio", schema.name());
+        assertEquals(1, schema.version());
+        assertEquals(BsonSchemaInference.OBJECT_ID_SCHEMA_NAME, schema.field("_id").schema().name());
+        assertEquals(Timestamp.LOGICAL_NAME, schema.field("lastUpdateTime").schema().name());
+        assertEquals(Decimal.LOGICAL_NAME, schema.field("amount").schema().name());
+        assertEquals(Schema.Type.INT32, schema.field("count").schema().type());
+        assertEquals(Schema.Type.INT64, schema.field("total").schema().type());
+        assertEquals(Schema.Type.FLOAT64, schema.field("ratio").schema().type());
+        assertEquals(Schema.Type.BOOLEAN, schema.field("active").schema().type());
+        assertEquals(Schema.Type.STRUCT, schema.field("customer").schema().type());
+        assertEquals(Schema.Type.ARRAY, schema.field("tags").schema().type());
+
+        Struct struct = inference.toStruct(doc, schema);
+        struct.validate();
+        assertEquals(id.toHexString(), struct.get("_id"));
+        assertEquals(ts, struct.get("lastUpdateTime"));
+        assertEquals(new BigDecimal("12.34"), struct.get("amount"));
+        assertEquals("C-1", struct.getStruct("customer").getString("id"));
+        assertEquals(Arrays.asList("a", "b"), struct.getArray("tags"));
+    }
+
+    @Test
+    void testFieldUnionAndWidening() {
+        Schema first = inference.schema(new Document("a", 1).append("d", new Decimal128(new BigDecimal("1.5"))));
+        Schema second = inference.schema(new Document("a", 2L).append("b", "x")
+                .append("d", new Decimal128(new BigDecimal("1.25"))));
+
+        assertEquals(1, first.version());
+        assertEquals(2, second.version());
+        assertEquals(Schema.Type.INT64, second.field("a").schema().type());
+        assertNotNull(second.field("b"));
+
+        // older documents fit the evolved schema
+        Document old = new Document("a", 1).append("d", new Decimal128(new BigDecimal("1.5")));
+        assertSame(second, inference.schema(old));
+        Struct struct = inference.toStruct(old, second);
+        assertEquals(1L, struct.get("a"));
+        assertEquals(new BigDecimal("1.50"), struct.get("d"));
+        assertNull(struct.get("b"));
+    }
+
+    @Test
+    void testNegativeZeroDecimal() {
+        // Decimal128.bigDecimalValue() throws on negative zero
+        Document doc = new Document("d", Decimal128.parse("-0.00"));
+        Schema schema = inference.schema(doc);
+        assertEquals(Decimal.LOGICAL_NAME, schema.field("d").schema().name());
+        assertEquals("2", schema.field("d").schema().parameters().get(Decimal.SCALE_FIELD));
+
+        assertSame(schema, inference.schema(new Document("d", Decimal128.parse("-0"))));
+        assertEquals(new BigDecimal("0.00"), inference.toStruct(doc, schema).get("d"));
+        assertEquals(new BigDecimal("0.00"), inference.toStruct(new Document("d", Decimal128.parse("-0")), schema).get("d"));
+    }
+
+    @Test
+    void testConflictingTypesBecomeString() {
+        inference.schema(new Document("a", 1));
+        Schema schema = inference.schema(new Document("a", new Document("x", 1)));
+
+        assertEquals(Schema.Type.STRING, schema.field("a").schema().type());
+        assertEquals("1", inference.toStruct(new Document("a", 1), schema).get("a"));
+        assertEquals("{\"x\": 1}", inference.toStruct(new Document("a", new Document("x", 1)), schema).get("a"));
+    }
+
+    @Test
+    void testNullAndEmptyArrayAreUntyped() {
+        Schema schema = inference.schema(new Document("a", null).append("b", Collections.emptyList()));
+        assertTrue(schema.fields().isEmpty());
+
+        schema = inference.schema(new Document("b", Arrays.asList(1, 2)));
+        assertEquals(Schema.Type.INT32, schema.field("b").schema().valueSchema().type());
+        assertSame(schema, inference.schema(new Document("b", Collections.emptyList())));
+    }
+
+    @Test
+    void testFieldNamesAreAvroNames() {
+        Document doc = new Document("order-id", "O-1")
+                .append("1st", true)
+                .append("$type", "sale")
+                .append("customer", new Document("first name", "Alice"))
+                .append("lines", Arrays.asList(new Document("sku-code", "P-1")));
+
+        Schema schema = inference.schema(doc);
+        assertEquals(Arrays.asList("order_id", "_1st", "_type", "customer", "lines"),
+                schema.fields().stream().map(Field::name).collect(Collectors.toList()));
+        assertNotNull(schema.field("customer").schema().field("first_name"));
+
+        Struct struct = inference.toStruct(doc, schema);
+        struct.validate();
+        assertEquals("O-1", struct.get("order_id"));
+        assertEquals(true, struct.get("_1st"));
+        assertEquals("sale", struct.get("_type"));
+        assertEquals("Alice", struct.getStruct("customer").get("first_name"));
+        assertEquals("P-1", ((Struct) struct.getArray("lines").get(0)).get("sku_code"));
+        assertSame(schema, inference.schema(doc));
+
+        // fields sharing a name: merged types, last non null value
+        Document clash = new Document("a-b", 1).append("a_b", "x").append("c-d", 2).append("c_d", null);
+        schema = inference.schema(clash);
+        assertEquals(Schema.Type.STRING, schema.field("a_b").schema().type());
+        struct = inference.toStruct(clash, schema);
+        assertEquals("x", struct.get("a_b"));
+        assertEquals(2, struct.get("c_d"));
+    }
+}
@@ -0,0 +1,69 @@
+package org.hifly.kafka.mongo.source;
+
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonRendererTest {
+
+    private static Document document() {
+        return new Document("_id", new ObjectId("65a1b2c3d4e5f60718293a4b"))
+                .append("lastUpdateTime", new Date(1700000000000L))
+                .append("count", 5L)
+                .append("amount", Decimal128.parse("12.50"))
+                .append("ts", new BsonTimestamp(1700000000, 1))
+                .append("name", "café 😀 \"quoted\"")
+                .append("items", Arrays.asList(1, 2.5, null, new Document("ok", true)));
+    }
+
+    @Test
+    void testRelaxedAsDocumentToJson() {
+        JsonRenderer renderer = new JsonRenderer(JsonRenderer.Mode.RELAXED);
+        Document doc = document();
+
+        // buffers reused across documents
+        for (int i = 0; i < 3; i++) {
+            assertEquals(doc.toJson(), renderer.toJson(doc));
+            assertArrayEquals(doc.toJson().getBytes(StandardCharsets.UTF_8), renderer.toJsonBytes(doc));
+        }
+    }
+
+    @Test
+    void testPlainMode() {
+        String json = new JsonRenderer(JsonRenderer.mode(MongoQuerySourceConfig.JSON_MODE_PLAIN)).toJson(document());
+
+        assertTrue(json.startsWith("{\"_id\": \"65a1b2c3d4e5f60718293a4b\", \"lastUpdateTime\": 1700000000000, "
+                + "\"count\": 5, \"amount\": 12.50, \"ts\": 1700000000000,"), json);
+        assertFalse(json.contains("$"));
+    }
+
+    @Test
+    void testExtendedMode() {
+        String json = new JsonRenderer(JsonRenderer.Mode.EXTENDED).toJson(document());
+
+        assertTrue(json.contains("\"count\": {\"$numberLong\": \"5\"}"), json);
+        assertTrue(json.contains("\"lastUpdateTime\": {\"$date\": {\"$numberLong\": \"1700000000000\"}}"), json);
+    }
+
+    @Test
+    void testLargeDocument() {
+        JsonRenderer renderer = new JsonRenderer(JsonRenderer.Mode.RELAXED);
+        char[] payload = new char[2 << 20];
+        Arrays.fill(payload, 'é');
+        Document large = new Document("payload", new String(payload));
+        Document small = document();
+
+        assertArrayEquals(large.toJson().getBytes(StandardCharsets.UTF_8), renderer.toJsonBytes(large));
+        assertEquals(large.toJson(), renderer.toJson(large));
+        assertEquals(small.toJson(), renderer.toJson(small));
+        assertArrayEquals(small.toJson().getBytes(StandardCharsets.UTF_8), renderer.toJsonBytes(small));
+    }
+}
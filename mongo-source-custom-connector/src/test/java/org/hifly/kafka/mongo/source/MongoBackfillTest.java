@@ -0,0 +1,123 @@
+package org.hifly.kafka.mongo.source;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.model.Filters;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.apache.kafka.connect.source.SourceRecord;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MongoBackfillTest {
+
+    private static final String TIME_FIELD = "lastUpdateTime";
+
+    private static SourceRecord record(String value) {
+        return new SourceRecord(null, null, "test-topic", null, value);
+    }
+
+    private static BsonDocument json(Bson filter) {
+        return filter.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+    }
+
+    @Test
+    void testBoundaries() {
+        assertEquals(Arrays.asList(new Date(250), new Date(500), new Date(750)),
+                MongoBackfill.boundaries(new Date(0), new Date(1000), 4));
+        // offset values are BSON
+        assertEquals(Arrays.asList(new Date(1500)),
+                MongoBackfill.boundaries(new Date(1000), new BsonDateTime(2000), 2));
+        assertEquals(Arrays.asList(10L, 20L), MongoBackfill.boundaries(0, 30L, 3));
+        assertEquals(Collections.singletonList(new BsonTimestamp(150, 0)),
+                MongoBackfill.boundaries(new BsonTimestamp(100, 5), new BsonTimestamp(200, 1), 2));
+        // no empty slices
+        assertEquals(Collections.singletonList(1L), MongoBackfill.boundaries(0L, 2L, 4));
+        assertTrue(MongoBackfill.boundaries(5L, 5L, 4).isEmpty());
+        // not the same type, not a number or a time
+        assertTrue(MongoBackfill.boundaries(new Date(0), 1000L, 4).isEmpty());
+        assertTrue(MongoBackfill.boundaries("2024-01-01", "2024-12-31", 4).isEmpty());
+    }
+
+    @Test
+    void testRanges() {
+        List<Bson> firstRun = MongoBackfill.ranges(TIME_FIELD, null, 0L, 30L, 3);
+        assertEquals(3, firstRun.size());
+        // documents without time field are in the first slice, as they are read first by the polls
+        assertEquals(BsonDocument.parse("{\"$or\": [{\"lastUpdateTime\": null}, {\"lastUpdateTime\": {\"$lt\": {\"$numberLong\": \"10\"}}}]}"),
+                json(firstRun.get(0)));
+        assertEquals(BsonDocument.parse("{\"$and\": [{\"lastUpdateTime\": {\"$gte\": {\"$numberLong\": \"10\"}}}, {\"lastUpdateTime\": {\"$lt\": {\"$numberLong\": \"20\"}}}]}"),
+                json(firstRun.get(1)));
+        assertEquals(BsonDocument.parse("{\"$and\": [{\"lastUpdateTime\": {\"$gte\": {\"$numberLong\": \"20\"}}}, {\"lastUpdateTime\": {\"$lte\": {\"$numberLong\": \"30\"}}}]}"),
+                json(firstRun.get(2)));
+
+        // restart: from the position, first not used
+        MongoQueryOffset from = MongoQueryOffset.of(10L, "ID-1");
+        List<Bson> resumed = MongoBackfill.ranges(TIME_FIELD, from, null, 30L, 2);
+        assertEquals(2, resumed.size());
+        assertEquals(json(Filters.and(from.filter(TIME_FIELD), Filters.lt(TIME_FIELD, 20L))), json(resumed.get(0)));
+
+        assertTrue(MongoBackfill.ranges(TIME_FIELD, null, null, null, 3).isEmpty());
+        assertTrue(MongoBackfill.ranges(TIME_FIELD, null, 0L, 30L, 1).isEmpty());
+    }
+
+    @Test
+    void testRecordsInSliceOrder() throws Exception {
+        List<Bson> ranges = Arrays.asList(Filters.eq("slice", 0), Filters.eq("slice", 1), Filters.eq("slice", 2));
+        MongoBackfill.SliceReader reader = (range, queue) -> {
+            int slice = ranges.indexOf(range);
+            if (slice == 0) {
+                // the later slices end first
+                Thread.sleep(200);
+            }
+            if (slice == 2) {
+                return null;
+            }
+            for (int i = 0; i < 3; i++) {
+                if (!queue.put(record(slice + "-" + i), 1)) {
+                    return null;
+                }
+            }
+            return MongoQueryOffset.of((long) slice, slice + "-2");
+        };
+
+        List<Object> values = new ArrayList<>();
+        try (MongoBackfill backfill = new MongoBackfill(ranges, 2, Long.MAX_VALUE, reader, "backfill-test")) {
+            while (!backfill.done()) {
+                for (SourceRecord r : backfill.drain(2, 1000)) {
+                    values.add(r.value());
+                }
+            }
+            assertTrue(backfill.drain(2, 10).isEmpty());
+            // slice 2 had no records
+            Map<String, Object> last = backfill.lastPosition().toMap();
+            assertEquals(1L, last.get(MongoQueryOffset.LAST_PROCESSED_TS));
+        }
+        assertEquals(Arrays.asList("0-0", "0-1", "0-2", "1-0", "1-1", "1-2"), values);
+    }
+
+    @Test
+    void testSliceFailure() {
+        List<Bson> ranges = Arrays.asList(Filters.eq("slice", 0), Filters.eq("slice", 1));
+        MongoBackfill.SliceReader reader = (range, queue) -> {
+            throw new IllegalStateException("cursor killed");
+        };
+        try (MongoBackfill backfill = new MongoBackfill(ranges, 10, Long.MAX_VALUE, reader, "backfill-test")) {
+            assertThrows(ConnectException.class, () -> {
+                while (!backfill.done()) {
+                    backfill.drain(10, 1000);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.hifly.kafka.mongo.source;
+
+import com.mongodb.ConnectionString;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MongoClientRegistryTest {
+
+    private static final ConnectionString URI = new ConnectionString("mongodb://localhost:27017");
+
+    @Test
+    void testSameSettingsShareTheClient() {
+        int before = MongoClientRegistry.size();
+        MongoClientRegistry.Lease first = MongoClientRegistry.acquire(URI, 10, null, null);
+        MongoClientRegistry.Lease second = MongoClientRegistry.acquire(URI, 10, null, null);
+        MongoClientRegistry.Lease otherPool = MongoClientRegistry.acquire(URI, 20, null, null);
+        try {
+            assertSame(first.client(), second.client());
+            assertNotSame(first.client(), otherPool.client());
+            assertEquals(before + 2, MongoClientRegistry.size());
+        } finally {
+            first.close();
+            second.close();
+            otherPool.close();
+        }
+        assertEquals(before, MongoClientRegistry.size());
+    }
+
+    @Test
+    void testClientClosedWithTheLastLease() {
+        int before = MongoClientRegistry.size();
+        MongoClientRegistry.Lease first = MongoClientRegistry.acquire(URI, null, 1, 60_000L);
+        MongoClientRegistry.Lease second = MongoClientRegistry.acquire(URI, null, 1, 60_000L);
+
+        first.close();
+        // closing twice does not release the other lease
+        first.close();
+        assertEquals(before + 1, MongoClientRegistry.size());
+        assertNotNull(second.client());
+        assertThrows(IllegalStateException.class, first::client);
+
+        second.close();
+        assertEquals(before, MongoClientRegistry.size());
+
+        // a new client after the last one was closed
+        MongoClientRegistry.Lease third = MongoClientRegistry.acquire(URI, null, 1, 60_000L);
+        try {
+            assertNotNull(third.client().getDatabase("testdb"));
+        } finally {
+            third.close();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.hifly.kafka.mongo.source;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MongoIndexCheckTest {
+
+    @Test
+    void testCollectionScanAndSort() {
+        Document explain = Document.parse("{\"queryPlanner\": {"
+                + "\"winningPlan\": {\"stage\": \"LIMIT\", \"inputStage\": {\"stage\": \"SORT\", \"inputStage\": {\"stage\": \"COLLSCAN\"}}},"
+                + "\"rejectedPlans\": []}}");
+
+        assertEquals(Arrays.asList("sorts in memory (SORT)", "scans the whole collection (COLLSCAN)"),
+                MongoIndexCheck.problems(explain));
+    }
+
+    @Test
+    void testIndexScan() {
+        Document explain = Document.parse("{\"queryPlanner\": {"
+                + "\"winningPlan\": {\"stage\": \"LIMIT\", \"inputStage\": {\"stage\": \"FETCH\", "
+                + "\"inputStage\": {\"stage\": \"IXSCAN\", \"keyPattern\": {\"lastUpdateTime\": 1, \"_id\": 1}}}},"
+                // a rejected plan is not a problem
+                + "\"rejectedPlans\": [{\"stage\": \"SORT\", \"inputStage\": {\"stage\": \"COLLSCAN\"}}]}}");
+
+        assertEquals(Collections.emptyList(), MongoIndexCheck.problems(explain));
+    }
+
+    @Test
+    void testPipelineAndShards() {
+        Document pipeline = Document.parse("{\"stages\": ["
+                + "{\"$cursor\": {\"queryPlanner\": {\"winningPlan\": {\"queryPlan\": {\"stage\": \"IXSCAN\"}}}}},"
+                + "{\"$lookup\": {\"from\": \"other\"}},"
+                + "{\"$sort\": {\"sortKey\": {\"lastUpdateTime\": 1, \"_id\": 1}}}]}");
+        assertEquals(Collections.singletonList("sorts the pipeline output in memory ($sort stage)"),
+                MongoIndexCheck.problems(pipeline));
+
+        Document sharded = Document.parse("{\"queryPlanner\": {\"winningPlan\": {\"stage\": \"SHARD_MERGE_SORT\", "
+                + "\"shards\": [{\"winningPlan\": {\"stage\": \"IXSCAN\"}}, {\"winningPlan\": {\"stage\": \"COLLSCAN\"}}]}}}");
+        assertEquals(Collections.singletonList("scans the whole collection (COLLSCAN)"),
+                MongoIndexCheck.problems(sharded));
+    }
+
+    @Test
+    void testIndexKeys() {
+        BsonDocument filter = BsonDocument.parse("{\"status\": \"ACTIVE\", \"amount\": {\"$gt\": 10}, "
+                + "\"type\": {\"$eq\": \"A\"}, \"$or\": [{\"a\": 1}, {\"b\": 1}]}");
+
+        assertEquals(BsonDocument.parse("{\"status\": 1, \"type\": 1, \"lastUpdateTime\": 1, \"_id\": 1, \"amount\": 1}"),
+                MongoIndexCheck.indexKeys("lastUpdateTime", filter));
+        assertEquals(BsonDocument.parse("{\"lastUpdateTime\": 1, \"_id\": 1}"),
+                MongoIndexCheck.indexKeys("lastUpdateTime", null));
+    }
+}
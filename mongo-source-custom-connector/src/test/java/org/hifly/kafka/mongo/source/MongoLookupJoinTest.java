@@ -0,0 +1,142 @@
+package org.hifly.kafka.mongo.source;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.Decimal128;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MongoLookupJoinTest {
+
+    private static final String CUSTOMERS =
+            "[{\"from\": \"customers\", \"localField\": \"customerId\", \"foreignField\": \"_id\", \"as\": \"customer\"}]";
+
+    private static final Document ALICE = new Document("_id", 1).append("name", "Alice");
+    private static final Document BOB = new Document("_id", 2L).append("name", "Bob");
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static MongoCollection<Document> collection(List<Document> documents) {
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        FindIterable<Document> find = mock(FindIterable.class, RETURNS_SELF);
+        when(collection.find()).thenReturn(find);
+        when(find.into(any(List.class))).thenReturn((List) documents);
+        return collection;
+    }
+
+    @Test
+    void testParse() {
+        List<MongoLookupJoin.Lookup> lookups = MongoLookupJoin.parse(CUSTOMERS);
+        assertEquals(1, lookups.size());
+        assertEquals("customers", lookups.get(0).from());
+        assertTrue(MongoLookupJoin.parse(" ").isEmpty());
+
+        assertThrows(IllegalArgumentException.class, () -> MongoLookupJoin.parse("{\"from\": \"customers\"}"));
+        assertThrows(IllegalArgumentException.class,
+                () -> MongoLookupJoin.parse("[{\"from\": \"customers\", \"localField\": \"customerId\", \"foreignField\": \"_id\"}]"));
+
+        Map<String, String> cfg = new HashMap<>();
+        cfg.put(MongoQuerySourceConfig.TOPIC_CONFIG, "test-topic");
+        cfg.put(MongoQuerySourceConfig.MONGO_URI_CONFIG, "mongodb://localhost:27017");
+        cfg.put(MongoQuerySourceConfig.MONGO_DB_CONFIG, "testdb");
+        cfg.put(MongoQuerySourceConfig.MONGO_COLLECTION_CONFIG, "orders");
+        cfg.put(MongoQuerySourceConfig.TIME_FIELD_CONFIG, "lastUpdateTime");
+        cfg.put(MongoQuerySourceConfig.LOOKUP_COLLECTIONS_CONFIG, "[{\"from\": 1}]");
+        assertThrows(ConfigException.class, () -> new MongoQuerySourceConfig(cfg));
+    }
+
+    @Test
+    void testJoinAsLookup() {
+        MongoLookupJoin join = new MongoLookupJoin(MongoLookupJoin.parse(CUSTOMERS), 0, 100);
+        join.refresh(name -> collection(Arrays.asList(ALICE, BOB)));
+        assertEquals(2, join.documents());
+
+        // numbers match across types
+        assertEquals(Collections.singletonList(ALICE), join.join(new Document("customerId", 1L)).get("customer"));
+        assertEquals(Collections.singletonList(BOB), join.join(new Document("customerId", 2)).get("customer"));
+        assertEquals(Collections.singletonList(BOB), join.join(new Document("customerId", 2.0)).get("customer"));
+        assertEquals(Collections.singletonList(ALICE),
+                join.join(new Document("customerId", Decimal128.parse("1.00"))).get("customer"));
+        // negative zero, rejected by Decimal128.bigDecimalValue(), matches 0
+        assertEquals(Collections.emptyList(), join.join(new Document("customerId", Decimal128.parse("-0"))).get("customer"));
+        assertEquals(0L, MongoLookupJoin.key(Decimal128.parse("-0.0")));
+        // array localField: matches of each element
+        assertEquals(Arrays.asList(ALICE, BOB), join.join(new Document("customerId", Arrays.asList(1, 2, 1))).get("customer"));
+        // no match: empty array, replacing the field
+        Document noMatch = join.join(new Document("customerId", 9).append("customer", "old"));
+        assertEquals(Collections.emptyList(), noMatch.get("customer"));
+        assertEquals(Collections.emptyList(), join.join(new Document("_id", "O-1")).get("customer"));
+
+        // bson output: re-encoded with the joined field
+        DocumentCodec codec = new DocumentCodec();
+        RawBsonDocument raw = join.join(new RawBsonDocument(new Document("customerId", 1), codec), codec);
+        assertEquals("Alice", raw.getArray("customer").get(0).asDocument().getString("name").getValue());
+    }
+
+    @Test
+    void testNestedPathsAndNullKeys() {
+        MongoLookupJoin join = new MongoLookupJoin(MongoLookupJoin.parse(
+                "[{\"from\": \"products\", \"localField\": \"lines.sku\", \"foreignField\": \"codes\", \"as\": \"enriched.products\"}]"),
+                0, 100);
+        Document pen = new Document("_id", 1).append("codes", Arrays.asList("P-1", "PEN"));
+        Document ink = new Document("_id", 2).append("codes", "I-1");
+        Document uncoded = new Document("_id", 3);
+        join.refresh(name -> collection(Arrays.asList(pen, ink, uncoded)));
+
+        Document order = new Document("lines", Arrays.asList(new Document("sku", "PEN"), new Document("sku", "I-1")));
+        join.join(order);
+        assertEquals(Arrays.asList(pen, ink), ((Document) order.get("enriched")).get("products"));
+
+        // missing localField matches missing foreignField, as $lookup
+        Document noLines = join.join(new Document("_id", "O-2"));
+        assertEquals(Collections.singletonList(uncoded), ((Document) noLines.get("enriched")).get("products"));
+    }
+
+    @Test
+    void testRefreshAfterTtl() {
+        AtomicLong clock = new AtomicLong();
+        MongoLookupJoin join = new MongoLookupJoin(MongoLookupJoin.parse(CUSTOMERS), 1000, 100, clock::get);
+        join.refresh(name -> collection(Collections.singletonList(ALICE)));
+        assertEquals(1, join.refreshes());
+
+        Document carol = new Document("_id", 1).append("name", "Carol");
+        clock.set(TimeUnit.MILLISECONDS.toNanos(999));
+        join.refresh(name -> collection(Collections.singletonList(carol)));
+        assertEquals(1, join.refreshes());
+        assertEquals(Collections.singletonList(ALICE), join.join(new Document("customerId", 1)).get("customer"));
+
+        clock.set(TimeUnit.MILLISECONDS.toNanos(1000));
+        join.refresh(name -> collection(Collections.singletonList(carol)));
+        assertEquals(2, join.refreshes());
+        assertEquals(Collections.singletonList(carol), join.join(new Document("customerId", 1)).get("customer"));
+
+        // failed reload: the documents loaded before are kept
+        clock.set(TimeUnit.MILLISECONDS.toNanos(2000));
+        join.refresh(name -> {
+            throw new IllegalStateException("down");
+        });
+        assertEquals(1, join.refreshFailures());
+        assertEquals(Collections.singletonList(carol), join.join(new Document("customerId", 1)).get("customer"));
+    }
+
+    @Test
+    void testCollectionOverMaxDocumentsIsNotLoaded() {
+        MongoLookupJoin join = new MongoLookupJoin(MongoLookupJoin.parse(CUSTOMERS), 0, 1);
+        assertThrows(ConnectException.class, () -> join.refresh(name -> collection(Arrays.asList(ALICE, BOB))));
+        assertEquals(0, join.documents());
+    }
+}
@@ -0,0 +1,101 @@
+package org.hifly.kafka.mongo.source;
+
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MongoQueryOffsetTest {
+
+    private static final String TIME_FIELD = "lastUpdateTime";
+
+    @Test
+    void testRoundTripKeepsBsonTypes() {
+        ObjectId id = new ObjectId();
+        Date ts = new Date(1_700_000_000_123L);
+
+        Map<String, Object> stored = MongoQueryOffset.of(ts, id).toMap();
+        assertEquals(1_700_000_000_123L, stored.get(MongoQueryOffset.LAST_PROCESSED_TS));
+
+        MongoQueryOffset restored = MongoQueryOffset.fromMap(stored);
+        assertEquals(1_700_000_000_123L, restored.millis());
+        // same predicate from the decoded Java values and from the BSON values read back from the offset
+        assertEquals(filter(MongoQueryOffset.of(new BsonDateTime(ts.getTime()), new BsonObjectId(id))), filter(restored));
+        assertEquals(filter(MongoQueryOffset.of(ts, id)), filter(restored));
+    }
+
+    @Test
+    void testBackfillEndRoundTrip() {
+        ObjectId id = new ObjectId();
+        MongoQueryOffset end = MongoQueryOffset.of(new Date(2000), null);
+        Map<String, Object> stored = MongoQueryOffset.of(new Date(1000), id).backfilling(end).toMap();
+        assertTrue(stored.containsKey(MongoQueryOffset.BACKFILL_END));
+
+        MongoQueryOffset restored = MongoQueryOffset.fromMap(stored);
+        assertEquals(new BsonDateTime(2000), restored.backfillEnd().ts());
+        assertEquals(filter(MongoQueryOffset.of(new Date(1000), id)), filter(restored));
+        assertNull(MongoQueryOffset.fromMap(MongoQueryOffset.of(new Date(1000), id).toMap()).backfillEnd());
+    }
+
+    @Test
+    void testKeysetFilter() {
+        BsonDocument filter = filter(MongoQueryOffset.of(new Date(1000), "ID-1"));
+        assertEquals(BsonDocument.parse("{\"$or\": ["
+                + "{\"lastUpdateTime\": {\"$gt\": {\"$date\": 1000}}}, "
+                + "{\"$and\": [{\"lastUpdateTime\": {\"$date\": 1000}}, {\"_id\": {\"$gt\": \"ID-1\"}}]}]}"), filter);
+
+        // missing time field: the documents with a time field, or the next _id among those without
+        filter = filter(MongoQueryOffset.of(null, "ID-1"));
+        assertEquals(BsonDocument.parse("{\"$or\": ["
+                + "{\"lastUpdateTime\": {\"$ne\": null}}, "
+                + "{\"$and\": [{\"lastUpdateTime\": null}, {\"_id\": {\"$gt\": \"ID-1\"}}]}]}"), filter);
+        assertEquals(0L, MongoQueryOffset.of(null, "ID-1").millis());
+    }
+
+    @Test
+    void testLegacyOffsetReplaysLastMillisecond() {
+        Map<String, Object> legacy = new HashMap<>();
+        legacy.put(MongoQueryOffset.LAST_PROCESSED_TS, 1000L);
+
+        MongoQueryOffset offset = MongoQueryOffset.fromMap(legacy);
+        assertEquals(BsonDocument.parse("{\"lastUpdateTime\": {\"$gte\": {\"$date\": 1000}}}"), filter(offset));
+        assertFalse(offset.toMap().containsKey(MongoQueryOffset.POSITION));
+
+        assertNull(MongoQueryOffset.fromMap(null));
+        assertNull(MongoQueryOffset.fromMap(Collections.singletonMap(MongoQueryOffset.LAST_PROCESSED_TS, 0L)));
+    }
+
+    @Test
+    void testTimeFieldTypes() {
+        long millis = 1_700_000_000_000L;
+        assertEquals(millis, MongoQueryOffset.millis(new Date(millis)));
+        assertEquals(millis, MongoQueryOffset.millis(new BsonTimestamp((int) (millis / 1000), 7)));
+        assertEquals(millis, MongoQueryOffset.millis(millis));
+        assertEquals(millis, MongoQueryOffset.millis("2023-11-14T22:13:20Z"));
+        assertEquals(millis, MongoQueryOffset.millis("2023-11-15T00:13:20+02:00"));
+        assertEquals(millis, MongoQueryOffset.millis("2023-11-14T22:13:20"));
+        assertEquals(0L, MongoQueryOffset.millis("not a date"));
+        assertEquals(0L, MongoQueryOffset.millis(true));
+
+        // BSON Timestamp survives the offset store as a Timestamp
+        MongoQueryOffset restored = MongoQueryOffset.fromMap(
+                MongoQueryOffset.of(new BsonTimestamp((int) (millis / 1000), 7), 1).toMap());
+        BsonValue ts = filter(restored).getArray("$or").get(0).asDocument()
+                .getDocument(TIME_FIELD).get("$gt");
+        assertEquals(new BsonTimestamp((int) (millis / 1000), 7), ts);
+    }
+
+    private static BsonDocument filter(MongoQueryOffset offset) {
+        return offset.filter(TIME_FIELD).toBsonDocument();
+    }
+}
@@ -0,0 +1,187 @@
+package org.hifly.kafka.mongo.source;
+
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Projections;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MongoQueryPlanTest {
+
+    private static Map<String, String> config() {
+        Map<String, String> cfg = new HashMap<>();
+        cfg.put(MongoQuerySourceConfig.TOPIC_CONFIG, "test-topic");
+        cfg.put(MongoQuerySourceConfig.MONGO_URI_CONFIG, "mongodb://localhost:27017");
+        cfg.put(MongoQuerySourceConfig.MONGO_DB_CONFIG, "testdb");
+        cfg.put(MongoQuerySourceConfig.MONGO_COLLECTION_CONFIG, "misure");
+        cfg.put(MongoQuerySourceConfig.TIME_FIELD_CONFIG, "lastUpdateTime");
+        return cfg;
+    }
+
+    @Test
+    void testEffectivePipeline() {
+        Map<String, String> cfg = config();
+        cfg.put(MongoQuerySourceConfig.BASE_FILTER_CONFIG, "{\"status\": \"ACTIVE\"}");
+        cfg.put(MongoQuerySourceConfig.PIPELINE_CONFIG, "[{\"$sort\": {\"lastUpdateTime\": 1}}]");
+        cfg.put(MongoQuerySourceConfig.PROJECTION_CONFIG, "{\"status\": 1}");
+
+        MongoQueryPlan plan = new MongoQueryPlan(new MongoQuerySourceConfig(cfg));
+        List<Bson> pipeline = plan.pipeline(null);
+
+        assertEquals(5, pipeline.size());
+        assertEquals(BsonDocument.parse("{\"$match\": {\"status\": \"ACTIVE\"}}"), pipeline.get(0).toBsonDocument());
+        assertEquals(BsonDocument.parse("{\"$sort\": {\"lastUpdateTime\": 1, \"_id\": 1}}"), pipeline.get(2).toBsonDocument());
+        assertEquals(BsonDocument.parse("{\"$limit\": 10000}"), pipeline.get(3).toBsonDocument());
+        assertEquals(BsonDocument.parse("{\"$project\": {\"status\": 1, \"lastUpdateTime\": 1}}"),
+                pipeline.get(4).toBsonDocument());
+
+        // the position is matched after the configured stages
+        List<Bson> resumed = plan.pipeline(MongoQueryOffset.of(new Date(1000), "ID-1"));
+        assertEquals(6, resumed.size());
+        assertTrue(resumed.get(2).toBsonDocument().containsKey("$match"));
+    }
+
+    @Test
+    void testOutputStagePipelineIsNotResumed() {
+        Map<String, String> cfg = config();
+        cfg.put(MongoQuerySourceConfig.PIPELINE_CONFIG, "[{\"$merge\": {\"into\": \"other\"}}]");
+        cfg.put(MongoQuerySourceConfig.PROJECTION_CONFIG, "{\"status\": 1}");
+
+        List<Bson> pipeline = new MongoQueryPlan(new MongoQuerySourceConfig(cfg))
+                .pipeline(MongoQueryOffset.of(new Date(1000), "ID-1"));
+
+        assertEquals(1, pipeline.size());
+        assertThrows(UnsupportedOperationException.class, () -> pipeline.add(new Document()));
+    }
+
+    @Test
+    void testFindPathAndMalformedFilter() {
+        Map<String, String> cfg = config();
+        cfg.put(MongoQuerySourceConfig.BASE_FILTER_CONFIG, "{status:");
+
+        MongoQueryPlan plan = new MongoQueryPlan(new MongoQuerySourceConfig(cfg));
+
+        assertNull(plan.pipeline(null));
+        assertEquals("testdb", plan.partition().get("db"));
+        assertEquals("misure", plan.partition().get("collection"));
+        assertThrows(UnsupportedOperationException.class, () -> plan.partition().put("db", "other"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testReadOptions() {
+        Map<String, String> cfg = config();
+        cfg.put(MongoQuerySourceConfig.READ_PREFERENCE_CONFIG, "secondaryPreferred");
+        cfg.put(MongoQuerySourceConfig.READ_CONCERN_CONFIG, "majority");
+        cfg.put(MongoQuerySourceConfig.BATCH_SIZE_CONFIG, "500");
+        cfg.put(MongoQuerySourceConfig.MAX_TIME_MS_CONFIG, "30000");
+        cfg.put(MongoQuerySourceConfig.HINT_CONFIG, "lastUpdateTime_1__id_1");
+        cfg.put(MongoQuerySourceConfig.ALLOW_DISK_USE_CONFIG, "true");
+        MongoQueryPlan plan = new MongoQueryPlan(new MongoQuerySourceConfig(cfg));
+
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        MongoCollection<Document> secondary = mock(MongoCollection.class);
+        MongoCollection<Document> majority = mock(MongoCollection.class);
+        when(collection.withReadPreference(ReadPreference.secondaryPreferred())).thenReturn(secondary);
+        when(secondary.withReadConcern(ReadConcern.MAJORITY)).thenReturn(majority);
+        assertSame(majority, plan.readFrom(collection));
+
+        FindIterable<Document> find = mock(FindIterable.class, RETURNS_SELF);
+        when(majority.find(any(Bson.class), eq(Document.class))).thenReturn(find);
+        when(majority.find(Document.class)).thenReturn(find);
+        plan.query(majority, Document.class, null);
+        verify(find).batchSize(500);
+        verify(find).maxTime(30000, TimeUnit.MILLISECONDS);
+        verify(find).hintString("lastUpdateTime_1__id_1");
+        verify(find).allowDiskUse(true);
+
+        cfg.put(MongoQuerySourceConfig.PIPELINE_CONFIG, "[{\"$match\": {\"status\": \"ACTIVE\"}}]");
+        cfg.put(MongoQuerySourceConfig.HINT_CONFIG, "{\"lastUpdateTime\": 1, \"_id\": 1}");
+        AggregateIterable<Document> aggregate = mock(AggregateIterable.class, RETURNS_SELF);
+        when(majority.aggregate(anyList(), eq(Document.class))).thenReturn(aggregate);
+        new MongoQueryPlan(new MongoQuerySourceConfig(cfg)).query(majority, Document.class, null);
+        verify(aggregate).batchSize(500);
+        verify(aggregate).maxTime(30000, TimeUnit.MILLISECONDS);
+        verify(aggregate).hint(BsonDocument.parse("{\"lastUpdateTime\": 1, \"_id\": 1}"));
+        verify(aggregate).allowDiskUse(true);
+    }
+
+    @Test
+    void testNoReadOptions() {
+        MongoQueryPlan plan = new MongoQueryPlan(new MongoQuerySourceConfig(config()));
+        @SuppressWarnings("unchecked")
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+
+        assertSame(collection, plan.readFrom(collection));
+        verifyNoInteractions(collection);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPipelineProbe() {
+        Map<String, String> cfg = config();
+        cfg.put(MongoQuerySourceConfig.PIPELINE_CONFIG, "[{\"$match\": {\"status\": \"ACTIVE\"}}]");
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        MongoQueryOffset position = MongoQueryOffset.of(new Date(1000L), 7);
+
+        // not enabled
+        MongoQueryPlan noProbe = new MongoQueryPlan(new MongoQuerySourceConfig(cfg));
+        assertFalse(noProbe.probes());
+        assertTrue(noProbe.hasNewDocuments(collection, position));
+        verifyNoInteractions(collection);
+
+        cfg.put(MongoQuerySourceConfig.PIPELINE_PROBE_CONFIG, "true");
+        MongoQueryPlan plan = new MongoQueryPlan(new MongoQuerySourceConfig(cfg));
+        assertTrue(plan.probes());
+        // first run: no position, no probe
+        assertTrue(plan.hasNewDocuments(collection, null));
+        verifyNoInteractions(collection);
+
+        FindIterable<BsonDocument> empty = mock(FindIterable.class, RETURNS_SELF);
+        when(empty.first()).thenReturn(null);
+        when(collection.find(any(Bson.class), eq(BsonDocument.class))).thenReturn(empty);
+        assertFalse(plan.hasNewDocuments(collection, position));
+        verify(empty).projection(Projections.include("lastUpdateTime", "_id"));
+        verify(empty).limit(1);
+
+        FindIterable<BsonDocument> hit = mock(FindIterable.class, RETURNS_SELF);
+        when(hit.first()).thenReturn(BsonDocument.parse("{\"_id\": 8}"));
+        when(collection.find(any(Bson.class), eq(BsonDocument.class))).thenReturn(hit);
+        assertTrue(plan.hasNewDocuments(collection, position));
+
+        // $out pipelines are not probed
+        cfg.put(MongoQuerySourceConfig.PIPELINE_CONFIG, "[{\"$out\": \"copy\"}]");
+        assertFalse(new MongoQueryPlan(new MongoQuerySourceConfig(cfg)).probes());
+    }
+
+    @Test
+    void testKeyPath() {
+        Map<String, String> cfg = config();
+        cfg.put(MongoQuerySourceConfig.KEY_FIELD_CONFIG, "customer.id");
+        MongoQueryPlan plan = new MongoQueryPlan(new MongoQuerySourceConfig(cfg));
+
+        Document doc = new Document("_id", 1).append("customer", new Document("id", "C-1"));
+        assertEquals("C-1", plan.key(doc));
+        assertEquals("C-1", plan.key(RawBsonDocument.parse(doc.toJson())).asString().getValue());
+        assertNull(plan.key(new Document("_id", 1).append("customer", "C-1")));
+        assertNull(plan.key(RawBsonDocument.parse("{\"_id\": 1}")));
+
+        MongoQueryPlan byId = new MongoQueryPlan(new MongoQuerySourceConfig(config()));
+        assertEquals(1, byId.key(doc));
+    }
+}
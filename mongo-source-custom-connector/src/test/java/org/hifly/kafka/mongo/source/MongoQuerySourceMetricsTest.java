@@ -0,0 +1,100 @@
+package org.hifly.kafka.mongo.source;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.KafkaMetric;
+import org.apache.kafka.common.utils.Time;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MongoQuerySourceMetricsTest {
+
+    private MongoQuerySourceMetrics metrics;
+
+    @AfterEach
+    void tearDown() {
+        if (metrics != null) {
+            metrics.close();
+        }
+    }
+
+    @Test
+    void testPollAndCommandMetrics() {
+        metrics = new MongoQuerySourceMetrics("conn", "testdb", "misure", () -> 0L,
+                Collections.emptyList(), Time.SYSTEM);
+
+        metrics.recordCommand(TimeUnit.MILLISECONDS.toNanos(30), 100, false);
+        metrics.recordCommand(TimeUnit.MILLISECONDS.toNanos(10), 50, true);
+        metrics.recordPoll(TimeUnit.MILLISECONDS.toNanos(50), 120, 4096);
+        metrics.recordCommandFailure(false);
+        metrics.recordCommandFailure(true);
+
+        assertEquals(120.0, value("records-emitted-total"));
+        assertEquals(120.0, value("records-per-poll-max"));
+        assertEquals(4096.0, value("bytes-emitted-total"));
+        assertEquals(40.0, value("poll-query-time-max"), 0.001);
+        assertEquals(50.0, value("poll-time-max"), 0.001);
+        assertEquals(2.0, value("command-failures-total"));
+        assertEquals(1.0, value("max-time-expired-total"));
+        assertEquals(2.0, value("cursor-batches-total"));
+        assertEquals(75.0, value("cursor-batch-size-avg"), 0.001);
+        assertEquals(100.0, value("cursor-batch-size-max"));
+        assertEquals(1.0, value("secondary-reads-total"));
+
+        metrics.recordPipelineProbe(true);
+        metrics.recordPipelineProbe(false);
+        assertEquals(2.0, value("pipeline-probes-total"));
+        assertEquals(1.0, value("pipeline-skips-total"));
+
+        // query time is per poll: reset after each poll
+        metrics.recordPoll(TimeUnit.MILLISECONDS.toNanos(5), 0, 0);
+        assertEquals(20.0, value("poll-query-time-avg"), 0.001);
+    }
+
+    @Test
+    void testWatermarkLag() {
+        long ts = System.currentTimeMillis() - 60_000;
+        metrics = new MongoQuerySourceMetrics("conn", "testdb", "misure", () -> ts,
+                Collections.emptyList(), Time.SYSTEM);
+
+        double lag = value("watermark-lag-ms");
+        assertTrue(lag >= 60_000 && lag < 120_000);
+    }
+
+    @Test
+    void testWatermarkLagBeforeFirstRecord() {
+        metrics = new MongoQuerySourceMetrics("conn", "testdb", "misure", () -> 0L,
+                Collections.emptyList(), Time.SYSTEM);
+
+        assertTrue(Double.isNaN(value("watermark-lag-ms")));
+    }
+
+    @Test
+    void testJmxRegistration() throws Exception {
+        metrics = new MongoQuerySourceMetrics("conn", "testdb", "misure", () -> 0L);
+
+        ObjectName name = new ObjectName(MongoQuerySourceMetrics.JMX_NAMESPACE
+                + ":type=" + MongoQuerySourceMetrics.GROUP + ",connector=conn,database=testdb,collection=misure");
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+
+        metrics.close();
+        metrics = null;
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    private double value(String name) {
+        for (KafkaMetric metric : metrics.metrics().metrics().values()) {
+            MetricName metricName = metric.metricName();
+            if (metricName.name().equals(name)) {
+                return (double) metric.metricValue();
+            }
+        }
+        throw new IllegalArgumentException("No metric " + name);
+    }
+}
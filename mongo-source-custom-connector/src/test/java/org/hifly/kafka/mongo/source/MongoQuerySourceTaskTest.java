@@ -179,6 +179,415 @@ class MongoQuerySourceTaskTest {
         assertEquals("1490570-2024-01-1-001", key);
     }
 
+    @Test
+    void testPollWithProjectionKeepsIdTimeAndKeyFields() throws Exception {
+        when(offsetStorageReader.offset(anyMap())).thenReturn(null);
+
+        MongoCollection<Document> misure =
+                client.getDatabase(DB).getCollection(COLL_MISURE);
+
+        misure.insertOne(new Document("_id", "ID-1")
+                .append(TIME_FIELD, new Date())
+                .append("customer", new Document("id", "C-1").append("name", "Mario"))
+                .append("status", "ACTIVE")
+                .append("payload", "large payload"));
+
+        Map<String, String> cfg =
+                baseConfig(MongoQuerySourceConfig.OUTPUT_FORMAT_JSON);
+        cfg.put(MongoQuerySourceConfig.KEY_FIELD_CONFIG, "customer.id");
+        cfg.put(MongoQuerySourceConfig.PROJECTION_CONFIG, "{\"status\": 1, \"_id\": 0}");
+
+        task.start(cfg);
+
+        List<SourceRecord> records = task.poll();
+        assertEquals(1, records.size());
+
+        Document value = Document.parse((String) records.get(0).value());
+        assertEquals("ID-1", value.get("_id"));
+        assertEquals("ACTIVE", value.get("status"));
+        assertNotNull(value.get(TIME_FIELD));
+        assertEquals("C-1", ((Document) value.get("customer")).get("id"));
+        assertFalse(((Document) value.get("customer")).containsKey("name"));
+        assertFalse(value.containsKey("payload"));
+        assertEquals("C-1", records.get(0).key());
+    }
+
+    @Test
+    void testPollWithPipelineAppendsProjection() throws Exception {
+        when(offsetStorageReader.offset(anyMap())).thenReturn(null);
+
+        MongoCollection<Document> misure =
+                client.getDatabase(DB).getCollection(COLL_MISURE);
+
+        misure.insertOne(new Document("_id", "ID-1")
+                .append(TIME_FIELD, new Date())
+                .append("status", "ACTIVE")
+                .append("payload", "large payload"));
+
+        Map<String, String> cfg =
+                baseConfig(MongoQuerySourceConfig.OUTPUT_FORMAT_JSON);
+        cfg.put(MongoQuerySourceConfig.PIPELINE_CONFIG, "[{\"$match\": {\"status\": \"ACTIVE\"}}]");
+        cfg.put(MongoQuerySourceConfig.PROJECTION_CONFIG, "{\"payload\": 0, \"" + TIME_FIELD + "\": 0}");
+
+        task.start(cfg);
+
+        List<SourceRecord> records = task.poll();
+        assertEquals(1, records.size());
+
+        Document value = Document.parse((String) records.get(0).value());
+        assertEquals("ACTIVE", value.get("status"));
+        assertNotNull(value.get(TIME_FIELD));
+        assertFalse(value.containsKey("payload"));
+    }
+
+    @Test
+    void testPollWithBsonOutputFormat() throws Exception {
+        when(offsetStorageReader.offset(anyMap())).thenReturn(null);
+
+        MongoCollection<Document> misure =
+                client.getDatabase(DB).getCollection(COLL_MISURE);
+
+        Date ts = new Date();
+        misure.insertOne(new Document("_id", "ID-1")
+                .append(TIME_FIELD, ts)
+                .append("customer", new Document("id", 42L))
+                .append("status", "ACTIVE"));
+
+        Map<String, String> cfg =
+                baseConfig(MongoQuerySourceConfig.OUTPUT_FORMAT_BSON);
+        cfg.put(MongoQuerySourceConfig.KEY_FIELD_CONFIG, "customer.id");
+
+        task.start(cfg);
+
+        List<SourceRecord> records = task.poll();
+        assertEquals(1, records.size());
+
+        SourceRecord r = records.get(0);
+        assertEquals(org.apache.kafka.connect.data.Schema.BYTES_SCHEMA, r.valueSchema());
+        assertEquals("42", r.key());
+        assertEquals(ts.getTime(), ((Number) r.sourceOffset().get("lastProcessedTs")).longValue());
+
+        org.bson.RawBsonDocument value = new org.bson.RawBsonDocument((byte[]) r.value());
+        assertEquals("ID-1", value.getString("_id").getValue());
+        assertEquals("ACTIVE", value.getString("status").getValue());
+    }
+
+    @Test
+    void testRestartResumesInsideSameTimestamp() throws Exception {
+        when(offsetStorageReader.offset(anyMap())).thenReturn(null);
+
+        MongoCollection<Document> misure =
+                client.getDatabase(DB).getCollection(COLL_MISURE);
+
+        Date ts = new Date();
+        misure.insertMany(Arrays.asList(
+                new Document("_id", "ID-1").append(TIME_FIELD, ts),
+                new Document("_id", "ID-2").append(TIME_FIELD, ts),
+                new Document("_id", "ID-3").append(TIME_FIELD, ts)));
+
+        Map<String, String> cfg =
+                baseConfig(MongoQuerySourceConfig.OUTPUT_FORMAT_JSON);
+        task.start(cfg);
+
+        List<SourceRecord> records = task.poll();
+        assertEquals(3, records.size());
+        // nothing new
+        assertEquals(0, task.poll().size());
+
+        // restart from the offset of the second record
+        task.stop();
+        @SuppressWarnings("unchecked")
+        Map<String, Object> offset = (Map<String, Object>) records.get(1).sourceOffset();
+        when(offsetStorageReader.offset(anyMap())).thenReturn(offset);
+        task = new MongoQuerySourceTask();
+        task.initialize(context);
+        task.start(cfg);
+
+        records = task.poll();
+        assertEquals(1, records.size());
+        assertEquals("ID-3", records.get(0).key());
+        assertEquals(ts.getTime(), ((Number) records.get(0).sourceOffset().get("lastProcessedTs")).longValue());
+    }
+
+    @Test
+    void testTimestampLongAndIsoStringTimeFields() throws Exception {
+        when(offsetStorageReader.offset(anyMap())).thenReturn(null);
+
+        MongoCollection<Document> misure =
+                client.getDatabase(DB).getCollection(COLL_MISURE);
+
+        long millis = 1_700_000_000_000L;
+        misure.insertOne(new Document("_id", "ID-1").append(TIME_FIELD, new org.bson.BsonTimestamp((int) (millis / 1000), 1)));
+
+        Map<String, String> cfg =
+                baseConfig(MongoQuerySourceConfig.OUTPUT_FORMAT_JSON);
+        task.start(cfg);
+
+        List<SourceRecord> records = task.poll();
+        assertEquals(1, records.size());
+        assertEquals(millis, ((Number) records.get(0).sourceOffset().get("lastProcessedTs")).longValue());
+
+        client.getDatabase(DB).getCollection("misure-long").insertOne(new Document("_id", "ID-1").append(TIME_FIELD, millis));
+        client.getDatabase(DB).getCollection("misure-iso").insertOne(new Document("_id", "ID-1").append(TIME_FIELD, "2023-11-14T22:13:20Z"));
+        for (String coll : Arrays.asList("misure-long", "misure-iso")) {
+            task.stop();
+            task = new MongoQuerySourceTask();
+            task.initialize(context);
+            cfg.put(MongoQuerySourceConfig.MONGO_COLLECTION_CONFIG, coll);
+            task.start(cfg);
+
+            records = task.poll();
+            assertEquals(1, records.size());
+            assertEquals(millis, ((Number) records.get(0).sourceOffset().get("lastProcessedTs")).longValue());
+        }
+    }
+
+    @Test
+    void testFullPollsAreFollowedWithoutWaiting() throws Exception {
+        when(offsetStorageReader.offset(anyMap())).thenReturn(null);
+
+        MongoCollection<Document> misure =
+                client.getDatabase(DB).getCollection(COLL_MISURE);
+
+        long now = System.currentTimeMillis();
+        for (int i = 1; i <= 5; i++) {
+            misure.insertOne(new Document("_id", "ID-" + i).append(TIME_FIELD, new Date(now + i)));
+        }
+
+        Map<String, String> cfg =
+                baseConfig(MongoQuerySourceConfig.OUTPUT_FORMAT_JSON);
+        cfg.put(MongoQuerySourceConfig.POLL_INTERVAL_MS_CONFIG, "60000");
+        cfg.put(MongoQuerySourceConfig.POLL_MAX_RECORDS_CONFIG, "2");
+        task.start(cfg);
+
+        long start = System.currentTimeMillis();
+        assertEquals(Arrays.asList("ID-1", "ID-2"), keys(task.poll()));
+        assertEquals(Arrays.asList("ID-3", "ID-4"), keys(task.poll()));
+        assertEquals(Collections.singletonList("ID-5"), keys(task.poll()));
+        assertTrue(System.currentTimeMillis() - start < 30_000);
+    }
+
+    @Test
+    void testPrefetchKeepsOrder() throws Exception {
+        when(offsetStorageReader.offset(anyMap())).thenReturn(null);
+
+        MongoCollection<Document> misure =
+                client.getDatabase(DB).getCollection(COLL_MISURE);
+
+        long now = System.currentTimeMillis();
+        List<Object> expected = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            misure.insertOne(new Document("_id", "ID-" + i).append(TIME_FIELD, new Date(now + i)));
+            expected.add("ID-" + i);
+        }
+
+        Map<String, String> cfg =
+                baseConfig(MongoQuerySourceConfig.OUTPUT_FORMAT_JSON);
+        cfg.put(MongoQuerySourceConfig.PREFETCH_ENABLED_CONFIG, "true");
+        cfg.put(MongoQuerySourceConfig.POLL_MAX_RECORDS_CONFIG, "7");
+        cfg.put(MongoQuerySourceConfig.PREFETCH_QUEUE_MAX_RECORDS_CONFIG, "10");
+        task.start(cfg);
+
+        List<Object> keys = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (keys.size() < expected.size() && System.currentTimeMillis() < deadline) {
+            List<SourceRecord> records = task.poll();
+            assertTrue(records.size() <= 7);
+            keys.addAll(keys(records));
+        }
+        assertEquals(expected, keys);
+    }
+
+    @Test
+    void testParallelConversionKeepsOrder() throws Exception {
+        when(offsetStorageReader.offset(anyMap())).thenReturn(null);
+
+        MongoCollection<Document> misure =
+                client.getDatabase(DB).getCollection(COLL_MISURE);
+
+        long now = System.currentTimeMillis();
+        List<Object> expected = new ArrayList<>();
+        for (int i = 1; i <= 200; i++) {
+            misure.insertOne(new Document("_id", "ID-" + i).append(TIME_FIELD, new Date(now + i)));
+            expected.add("ID-" + i);
+        }
+
+        Map<String, String> cfg =
+                baseConfig(MongoQuerySourceConfig.OUTPUT_FORMAT_JSON);
+        cfg.put(MongoQuerySourceConfig.CONVERSION_THREADS_CONFIG, "4");
+        // every batch converted in parallel
+        cfg.put(MongoQuerySourceConfig.CONVERSION_PARALLEL_MIN_BYTES_CONFIG, "0");
+        task.start(cfg);
+
+        List<SourceRecord> records = task.poll();
+        assertEquals(expected, keys(records));
+        assertEquals(now + 200, ((Number) records.get(199).sourceOffset().get("lastProcessedTs")).longValue());
+    }
+
+    @Test
+    void testPlainJsonAsBytes() throws Exception {
+        when(offsetStorageReader.offset(anyMap())).thenReturn(null);
+
+        MongoCollection<Document> misure =
+                client.getDatabase(DB).getCollection(COLL_MISURE);
+
+        org.bson.types.ObjectId id = new org.bson.types.ObjectId();
+        Date ts = new Date(System.currentTimeMillis() - 1_000);
+        misure.insertOne(new Document("_id", id).append(TIME_FIELD, ts).append("value", 1));
+
+        Map<String, String> cfg =
+                baseConfig(MongoQuerySourceConfig.OUTPUT_FORMAT_JSON);
+        cfg.put(MongoQuerySourceConfig.JSON_MODE_CONFIG, MongoQuerySourceConfig.JSON_MODE_PLAIN);
+        cfg.put(MongoQuerySourceConfig.JSON_BYTES_CONFIG, "true");
+        task.start(cfg);
+
+        List<SourceRecord> records = task.poll();
+        assertEquals(1, records.size());
+        assertEquals(org.apache.kafka.connect.data.Schema.BYTES_SCHEMA, records.get(0).valueSchema());
+
+        String json = new String((byte[]) records.get(0).value(), java.nio.charset.StandardCharsets.UTF_8);
+        Document value = Document.parse(json);
+        assertEquals(id.toHexString(), value.get("_id"));
+        assertEquals(ts.getTime(), ((Number) value.get(TIME_FIELD)).longValue());
+    }
+
+    @Test
+    void testIndexCheck() throws Exception {
+        when(offsetStorageReader.offset(anyMap())).thenReturn(null);
+
+        MongoCollection<Document> misure =
+                client.getDatabase(DB).getCollection(COLL_MISURE);
+        misure.insertOne(new Document("_id", "ID-1").append(TIME_FIELD, new Date()).append("status", "ACTIVE"));
+
+        Map<String, String> cfg =
+                baseConfig(MongoQuerySourceConfig.OUTPUT_FORMAT_JSON);
+        cfg.put(MongoQuerySourceConfig.BASE_FILTER_CONFIG, "{\"status\": \"ACTIVE\"}");
+        cfg.put(MongoQuerySourceConfig.INDEX_CHECK_CONFIG, MongoQuerySourceConfig.INDEX_CHECK_FAIL);
+        // the failed task released its client and metrics
+        assertThrows(org.apache.kafka.connect.errors.ConnectException.class, () -> task.start(cfg));
+
+        cfg.put(MongoQuerySourceConfig.INDEX_CHECK_CONFIG, MongoQuerySourceConfig.INDEX_CHECK_CREATE);
+        task = new MongoQuerySourceTask();
+        task.initialize(context);
+        task.start(cfg);
+
+        List<Object> indexKeys = new ArrayList<>();
+        for (Document index : misure.listIndexes()) {
+            indexKeys.add(index.get("key"));
+        }
+        assertTrue(indexKeys.contains(new Document("status", 1).append(TIME_FIELD, 1).append("_id", 1)), indexKeys.toString());
+        assertEquals(1, task.poll().size());
+    }
+
+    @Test
+    void testPipelineProbeSkipsPipelineWithoutNewDocuments() throws Exception {
+        when(offsetStorageReader.offset(anyMap())).thenReturn(null);
+
+        MongoCollection<Document> misure =
+                client.getDatabase(DB).getCollection(COLL_MISURE);
+        long now = System.currentTimeMillis();
+        misure.insertOne(new Document("_id", "ID-1").append(TIME_FIELD, new Date(now)).append("status", "ACTIVE"));
+
+        Map<String, String> cfg =
+                baseConfig(MongoQuerySourceConfig.OUTPUT_FORMAT_JSON);
+        cfg.put(MongoQuerySourceConfig.PIPELINE_CONFIG, "[{\"$match\": {\"status\": \"ACTIVE\"}}]");
+        cfg.put(MongoQuerySourceConfig.PIPELINE_PROBE_CONFIG, "true");
+        task.start(cfg);
+
+        assertEquals(Collections.singletonList("ID-1"), keys(task.poll()));
+        // probe miss: pipeline not run
+        assertEquals(0, task.poll().size());
+
+        misure.insertOne(new Document("_id", "ID-2").append(TIME_FIELD, new Date(now)).append("status", "ACTIVE"));
+        assertEquals(Collections.singletonList("ID-2"), keys(task.poll()));
+    }
+
+    @Test
+    void testLookupCollectionsJoinedByTheTask() throws Exception {
+        when(offsetStorageReader.offset(anyMap())).thenReturn(null);
+
+        MongoCollection<Document> misure =
+                client.getDatabase(DB).getCollection(COLL_MISURE);
+        MongoCollection<Document> misureDettaglio =
+                client.getDatabase(DB).getCollection(COLL_MISURE_DETTAGLIO);
+
+        long now = System.currentTimeMillis();
+        misureDettaglio.insertOne(new Document("_id", "RID-DET-1").append("dettaglioMisuraRif", "RIF-1"));
+        misure.insertOne(new Document("_id", "RID-CON-DET").append("dettaglioMisuraRif", "RIF-1")
+                .append(TIME_FIELD, new Date(now - 2_000)));
+        misure.insertOne(new Document("_id", "RID-SENZA-DET").append("dettaglioMisuraRif", "RIF-2")
+                .append(TIME_FIELD, new Date(now - 1_000)));
+
+        Map<String, String> cfg =
+                baseConfig(MongoQuerySourceConfig.OUTPUT_FORMAT_JSON);
+        cfg.put(MongoQuerySourceConfig.LOOKUP_COLLECTIONS_CONFIG, "[{\"from\": \"" + COLL_MISURE_DETTAGLIO
+                + "\", \"localField\": \"dettaglioMisuraRif\", \"foreignField\": \"dettaglioMisuraRif\", \"as\": \"d\"}]");
+        task.start(cfg);
+
+        List<SourceRecord> records = task.poll();
+        assertEquals(Arrays.asList("RID-CON-DET", "RID-SENZA-DET"), keys(records));
+        // same shape as $lookup
+        List<?> withDetail = (List<?>) Document.parse((String) records.get(0).value()).get("d");
+        assertEquals(1, withDetail.size());
+        assertEquals("RID-DET-1", ((Document) withDetail.get(0)).get("_id"));
+        assertEquals(Collections.emptyList(), Document.parse((String) records.get(1).value()).get("d"));
+    }
+
+    @Test
+    void testBackfillInSlicesThenIncrementalPolls() throws Exception {
+        when(offsetStorageReader.offset(anyMap())).thenReturn(null);
+
+        MongoCollection<Document> misure =
+                client.getDatabase(DB).getCollection(COLL_MISURE);
+        misure.insertOne(new Document("_id", "ID-0"));
+        for (int i = 1; i <= 20; i++) {
+            misure.insertOne(new Document("_id", String.format("ID-%02d", i)).append(TIME_FIELD, new Date(1000L * i)));
+        }
+
+        Map<String, String> cfg =
+                baseConfig(MongoQuerySourceConfig.OUTPUT_FORMAT_JSON);
+        cfg.put(MongoQuerySourceConfig.BACKFILL_SLICES_CONFIG, "4");
+        cfg.put(MongoQuerySourceConfig.BACKFILL_SLICE_QUEUE_MAX_RECORDS_CONFIG, "2");
+        cfg.put(MongoQuerySourceConfig.POLL_MAX_RECORDS_CONFIG, "3");
+        task.start(cfg);
+
+        List<Object> keys = new ArrayList<>();
+        SourceRecord last = null;
+        for (int i = 0; i < 50 && keys.size() < 21; i++) {
+            List<SourceRecord> records = task.poll();
+            keys.addAll(keys(records));
+            if (!records.isEmpty()) {
+                last = records.get(records.size() - 1);
+            }
+        }
+        // in (time.field, _id) order, the document without time field first
+        List<Object> expected = new ArrayList<>();
+        expected.add("ID-0");
+        for (int i = 1; i <= 20; i++) {
+            expected.add(String.format("ID-%02d", i));
+        }
+        assertEquals(expected, keys);
+        assertNotNull(last.sourceOffset().get(MongoQueryOffset.BACKFILL_END));
+
+        // then incremental polling from the last backfill record
+        misure.insertOne(new Document("_id", "ID-21").append(TIME_FIELD, new Date(21_000L)));
+        List<SourceRecord> records = task.poll();
+        for (int i = 0; i < 5 && records.isEmpty(); i++) {
+            // the poll ending the backfill can be empty
+            records = task.poll();
+        }
+        assertEquals(Collections.singletonList("ID-21"), keys(records));
+        assertNull(records.get(0).sourceOffset().get(MongoQueryOffset.BACKFILL_END));
+    }
+
+    private static List<Object> keys(List<SourceRecord> records) {
+        List<Object> keys = new ArrayList<>();
+        for (SourceRecord r : records) {
+            keys.add(r.key());
+        }
+        return keys;
+    }
+
     @Test
     void testEmptyCollectionReturnsEmptyList() throws Exception {
         when(offsetStorageReader.offset(anyMap())).thenReturn(null);
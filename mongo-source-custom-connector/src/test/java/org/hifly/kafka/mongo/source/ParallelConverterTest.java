@@ -0,0 +1,62 @@
+package org.hifly.kafka.mongo.source;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelConverterTest {
+
+    private static List<Integer> batch(int n) {
+        List<Integer> batch = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            batch.add(i);
+        }
+        return batch;
+    }
+
+    @Test
+    void testLargeBatchKeepsOrder() throws Exception {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        try (ParallelConverter converter = new ParallelConverter(4, 100, "test-conversion")) {
+            List<String> converted = converter.convert(batch(1000), 1000 * 100, i -> {
+                threads.add(Thread.currentThread().getName());
+                return "doc-" + i;
+            });
+
+            assertEquals(1000, converted.size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("doc-" + i, converted.get(i));
+            }
+        }
+        assertTrue(threads.stream().allMatch(name -> name.startsWith("test-conversion-")));
+    }
+
+    @Test
+    void testSmallDocumentsOnCallingThread() throws Exception {
+        String caller = Thread.currentThread().getName();
+        try (ParallelConverter converter = new ParallelConverter(4, 100, "test-conversion")) {
+            List<String> converted = converter.convert(batch(1000), 1000 * 99, i -> Thread.currentThread().getName());
+
+            assertTrue(converted.stream().allMatch(caller::equals));
+        }
+    }
+
+    @Test
+    void testConversionErrorIsRethrown() {
+        try (ParallelConverter converter = new ParallelConverter(4, 0, "test-conversion")) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> converter.convert(batch(100), 0, i -> {
+                        if (i == 42) {
+                            throw new IllegalArgumentException("doc 42");
+                        }
+                        return i;
+                    }));
+            assertEquals("doc 42", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.hifly.kafka.mongo.source;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PollSchedulerTest {
+
+    @Test
+    void testFullPollRepollsAtOnce() {
+        PollScheduler scheduler = new PollScheduler(1000, 8000, 0.0, () -> 0.5);
+
+        scheduler.completed(500, 500, 10_000);
+        assertEquals(0, scheduler.delayMs(10_000));
+
+        scheduler.completed(499, 500, 10_000);
+        assertEquals(1000, scheduler.delayMs(10_000));
+    }
+
+    @Test
+    void testEmptyPollsBackOffUpToMax() {
+        PollScheduler scheduler = new PollScheduler(1000, 5000, 0.0, () -> 0.5);
+
+        long[] expected = {1000, 2000, 4000, 5000, 5000};
+        for (long delay : expected) {
+            scheduler.completed(0, 500, 0);
+            assertEquals(delay, scheduler.delayMs(0));
+        }
+
+        // records again: back to poll.interval.ms
+        scheduler.completed(1, 500, 0);
+        assertEquals(1000, scheduler.delayMs(0));
+    }
+
+    @Test
+    void testNoBackoffAndJitter() {
+        PollScheduler fixed = new PollScheduler(1000, 0, 0.0, () -> 0.5);
+        for (int i = 0; i < 5; i++) {
+            fixed.completed(0, 0, 0);
+        }
+        assertEquals(1000, fixed.delayMs(0));
+
+        PollScheduler jittered = new PollScheduler(1000, 0, 0.2, () -> 0.5);
+        jittered.completed(0, 0, 0);
+        assertEquals(900, jittered.delayMs(0));
+    }
+
+    @Test
+    void testStopEndsTheWait() throws Exception {
+        PollScheduler scheduler = new PollScheduler(60_000, 0, 0.0);
+        scheduler.completed(0, 0, System.currentTimeMillis());
+
+        Thread stopper = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            scheduler.stop();
+        });
+        stopper.start();
+
+        long start = System.nanoTime();
+        assertFalse(scheduler.awaitNextPoll(System.currentTimeMillis()));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        stopper.join();
+    }
+}
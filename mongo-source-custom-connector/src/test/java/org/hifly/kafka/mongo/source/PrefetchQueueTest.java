@@ -0,0 +1,96 @@
+package org.hifly.kafka.mongo.source;
+
+import org.apache.kafka.connect.source.SourceRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrefetchQueueTest {
+
+    private static SourceRecord record(int i) {
+        return new SourceRecord(Collections.singletonMap("db", "testdb"), Collections.singletonMap("i", i),
+                "test-topic", null, "value-" + i);
+    }
+
+    @Test
+    void testDrainKeepsOrderAndMax() throws Exception {
+        PrefetchQueue queue = new PrefetchQueue(10, 1000);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(queue.put(record(i), 10));
+        }
+
+        List<SourceRecord> first = queue.drain(3, 0);
+        assertEquals(3, first.size());
+        assertEquals("value-0", first.get(0).value());
+        assertEquals("value-2", first.get(2).value());
+        assertEquals(20, queue.bytes());
+
+        // wraps around the ring buffer
+        for (int i = 5; i < 12; i++) {
+            assertTrue(queue.put(record(i), 10));
+        }
+        List<SourceRecord> second = queue.drain(100, 0);
+        assertEquals(9, second.size());
+        assertEquals("value-3", second.get(0).value());
+        assertEquals("value-11", second.get(8).value());
+        assertEquals(0, queue.bytes());
+    }
+
+    @Test
+    void testBytesBackpressure() throws Exception {
+        PrefetchQueue queue = new PrefetchQueue(100, 100);
+        // an empty queue accepts a record larger than the limit
+        assertTrue(queue.put(record(0), 150));
+
+        AtomicBoolean put = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                put.set(queue.put(record(1), 10));
+            } catch (InterruptedException ignored) {
+            }
+            done.countDown();
+        });
+        producer.start();
+
+        assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, queue.drain(1, 0).size());
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(put.get());
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    void testCloseWakesBothSides() throws Exception {
+        PrefetchQueue queue = new PrefetchQueue(1, 1000);
+        assertTrue(queue.put(record(0), 1));
+
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicBoolean put = new AtomicBoolean(true);
+        Thread producer = new Thread(() -> {
+            try {
+                put.set(queue.put(record(1), 1));
+            } catch (InterruptedException ignored) {
+            }
+            done.countDown();
+        });
+        producer.start();
+        Thread.sleep(100);
+
+        queue.close();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertFalse(put.get());
+
+        // what is left, without waiting
+        long start = System.nanoTime();
+        assertEquals(1, queue.drain(10, 60_000).size());
+        assertTrue(queue.drain(10, 60_000).isEmpty());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+    }
+}
@@ -3,48 +3,89 @@ package org.hifly.kafka;
 import org.apache.kafka.common.config.ConfigDef;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.data.SchemaAndValue;
+import org.apache.kafka.connect.errors.DataException;
 import org.apache.kafka.connect.storage.Converter;
 import org.apache.kafka.connect.storage.ConverterConfig;
+import org.apache.kafka.connect.storage.ConverterType;
 import org.apache.kafka.connect.storage.HeaderConverter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 
 public class ByteArrayAndStringConverter implements Converter, HeaderConverter {
 
-    private static final ConfigDef CONFIG_DEF = ConverterConfig.newConfigDef();
     private static final Logger log = LoggerFactory.getLogger(ByteArrayAndStringConverter.class);
 
+    // values needing a larger buffer are encoded into a buffer used once
+    private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+    private Charset charset = StandardCharsets.UTF_8;
+    private CharsetEncoder encoder = newEncoder(charset);
+    private byte[] encodeBuffer = new byte[256];
+    private StructuredJsonWriter jsonWriter;
+
     @Override
     public ConfigDef config() {
-        return CONFIG_DEF;
+        return ByteArrayAndStringConverterConfig.configDef();
     }
 
     @Override
     public void configure(Map<String, ?> configs) {
+        ByteArrayAndStringConverterConfig config = new ByteArrayAndStringConverterConfig(configs);
+        charset = config.charset();
+        encoder = newEncoder(charset);
+        jsonWriter = config.structuredAsJson() ? new StructuredJsonWriter() : null;
+
+        log.debug("Converter type {} - charset {} - structured json {}", config.type(), charset, jsonWriter != null);
     }
 
     @Override
     public void configure(Map<String, ?> configs, boolean isKey) {
+        Map<String, Object> conf = new HashMap<>(configs);
+        conf.put(ConverterConfig.TYPE_CONFIG, isKey ? ConverterType.KEY.getName() : ConverterType.VALUE.getName());
+        configure(conf);
     }
 
     @Override
     public byte[] fromConnectData(String topic, Schema schema, Object value) {
-        if (schema != null && schema.type() != Schema.Type.BYTES) {
-            if (schema.type() == Schema.Type.STRING && value instanceof String) {
-                String result = (String)value;
-                log.debug("Received a string for KEY {} - its own byte [] representation with default charset will be sent", value);
-                return result.getBytes();
-            }
+        if (value == null) {
+            return null;
+        }
+
+        // passthrough: no copy for byte [] and for ByteBuffer wrapping a whole array
+        if (value instanceof byte[]) {
+            return (byte[]) value;
+        }
+
+        if (value instanceof ByteBuffer) {
+            return toByteArray((ByteBuffer) value);
+        }
+
+        if (value instanceof String) {
+            log.debug("Received a string for KEY {} - its own byte [] representation with charset {} will be sent", value, charset);
+            return ((String) value).getBytes(charset);
         }
 
-        if (value != null && !(value instanceof byte[])) {
-            String msg = value.toString();
-            return msg.getBytes();
+        if (value instanceof CharSequence) {
+            return encode((CharSequence) value);
         }
 
-        return (byte[]) value;
+        if (jsonWriter != null && StructuredJsonWriter.isStructured(value)) {
+            return jsonWriter.write(schema, value);
+        }
+
+        return value.toString().getBytes(charset);
     }
 
     @Override
@@ -65,4 +106,53 @@ public class ByteArrayAndStringConverter implements Converter, HeaderConverter {
     @Override
     public void close() {
     }
-}
\ No newline at end of file
+
+    private static byte[] toByteArray(ByteBuffer buffer) {
+        if (buffer.hasArray()
+                && buffer.arrayOffset() == 0
+                && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /*
+     Encode with the cached encoder into a reusable buffer, then copy out exactly the encoded bytes
+     */
+    private byte[] encode(CharSequence value) {
+        int maxSize = (int) Math.ceil(value.length() * (double) encoder.maxBytesPerChar());
+        byte[] buffer = encodeBuffer;
+        if (buffer.length < maxSize) {
+            buffer = new byte[maxSize];
+            if (maxSize <= MAX_RETAINED_CAPACITY) {
+                encodeBuffer = buffer;
+            }
+        }
+
+        ByteBuffer out = ByteBuffer.wrap(buffer);
+        encoder.reset();
+        try {
+            CoderResult result = encoder.encode(CharBuffer.wrap(value), out, true);
+            if (result.isUnderflow()) {
+                result = encoder.flush(out);
+            }
+            if (!result.isUnderflow()) {
+                result.throwException();
+            }
+        } catch (CharacterCodingException e) {
+            throw new DataException("Can't encode value with charset " + charset, e);
+        }
+
+        return Arrays.copyOf(buffer, out.position());
+    }
+
+    private static CharsetEncoder newEncoder(Charset charset) {
+        return charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+}
@@ -0,0 +1,57 @@
+package org.hifly.kafka;
+
+import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.connect.storage.ConverterConfig;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+public class ByteArrayAndStringConverterConfig extends ConverterConfig {
+
+    public static final String CHARSET_CONFIG = "charset";
+    public static final String CHARSET_DEFAULT = StandardCharsets.UTF_8.name();
+
+    public static final String STRUCTURED_FORMAT_CONFIG = "structured.format";
+    public static final String STRUCTURED_FORMAT_STRING = "string";
+    public static final String STRUCTURED_FORMAT_JSON = "json";
+
+    private static final ConfigDef CONFIG_DEF = ConverterConfig.newConfigDef()
+            .define(
+                    CHARSET_CONFIG,
+                    ConfigDef.Type.STRING,
+                    CHARSET_DEFAULT,
+                    (name, value) -> {
+                        try {
+                            Charset.forName((String) value);
+                        } catch (Exception e) {
+                            throw new ConfigException(name, value, "Unsupported charset");
+                        }
+                    },
+                    ConfigDef.Importance.MEDIUM,
+                    "charset used to encode string values, UTF-8 by default")
+            .define(
+                    STRUCTURED_FORMAT_CONFIG,
+                    ConfigDef.Type.STRING,
+                    STRUCTURED_FORMAT_STRING,
+                    ConfigDef.ValidString.in(STRUCTURED_FORMAT_STRING, STRUCTURED_FORMAT_JSON),
+                    ConfigDef.Importance.MEDIUM,
+                    "encoding of Struct, Map and List values: 'string' (Object.toString) or 'json' (UTF-8 JSON)");
+
+    public static ConfigDef configDef() {
+        return CONFIG_DEF;
+    }
+
+    public ByteArrayAndStringConverterConfig(Map<String, ?> props) {
+        super(CONFIG_DEF, props);
+    }
+
+    public Charset charset() {
+        return Charset.forName(getString(CHARSET_CONFIG));
+    }
+
+    public boolean structuredAsJson() {
+        return STRUCTURED_FORMAT_JSON.equals(getString(STRUCTURED_FORMAT_CONFIG));
+    }
+}
@@ -1,86 +1,109 @@
 package org.hifly.kafka;
 
-import org.apache.commons.codec.DecoderException;
-import org.apache.commons.codec.binary.Hex;
 import org.apache.kafka.connect.data.SchemaAndValue;
 import oracle.sql.RAW;
-import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.UUID;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class ConversionUtility {
 
     private static final String KEY = "_id";
     private static final Logger log = LoggerFactory.getLogger(ConversionUtility.class);
 
+    private static final ThreadLocal<String[]> HEX_BATCH = ThreadLocal.withInitial(() -> new String[256]);
+    // a batch larger than this gets an array used once, not kept by the thread
+    private static final int MAX_RETAINED_BATCH = 1 << 14;
+
     public static SchemaAndValue oracleRawToBson(byte[] value) {
 
+        String input = oracleRawToHex(value);
+        if (input == null) {
+            return SchemaAndValue.NULL;
+        }
+
+        return generateBsonDocument(input);
+    }
+
+    /*
+     Batch variant of oracleRawToBson: results written into out, SchemaAndValue.NULL for values that can't be converted
+     */
+    public static void oracleRawToBson(byte[][] values, int count, SchemaAndValue[] out) {
+        String[] hex = HEX_BATCH.get();
+        if (hex.length < count) {
+            hex = new String[count];
+            if (count <= MAX_RETAINED_BATCH) {
+                HEX_BATCH.set(hex);
+            }
+        }
+
+        oracleRawToHex(values, count, hex);
+
+        for (int i = 0; i < count; i++) {
+            out[i] = hex[i] != null ? generateBsonDocument(hex[i]) : SchemaAndValue.NULL;
+            hex[i] = null;
+        }
+    }
+
+    /*
+     Batch variant of oracleRawToHex: RAW values are encoded together in a reusable buffer,
+     HEXTORAW values and values that can't be converted (null) are handled one by one
+     */
+    public static void oracleRawToHex(byte[][] values, int count, String[] out) {
+        int start = 0;
+        for (int i = 0; i <= count; i++) {
+            if (i < count && values[i] != null && !OracleRawCodec.isHexToRaw(values[i])) {
+                continue;
+            }
+            if (i > start) {
+                OracleRawCodec.toHexStrings(values, start, i - start, out, start);
+            }
+            if (i < count) {
+                out[i] = values[i] != null ? oracleRawToHex(values[i]) : null;
+            }
+            start = i + 1;
+        }
+    }
+
+    /*
+     Hex value of the RAW key, null if it can't be extracted
+     */
+    public static String oracleRawToHex(byte[] value) {
+
         String input ;
 
         try {
-            String raw = new String(value);
             // case when a RAW is already set
-            if (raw.startsWith("HEXTORAW")) {
-
-                Pattern pattern = Pattern.compile("HEXTORAW\\('([^']*)'\\)");
-                Matcher matcher = pattern.matcher(raw);
-                if (matcher.find()) {
-                    raw = matcher.group(1);
-                    input = raw.toUpperCase();
+            if (OracleRawCodec.isHexToRaw(value)) {
 
+                input = OracleRawCodec.parseHexToRaw(value);
+                if (input != null) {
                     log.debug("EXISTING RAW {}", input);
                 } else {
                     log.error("Error in extracting a RAW value - SchemaAndValue.NULL will be returned");
-                    return SchemaAndValue.NULL;
+                    return null;
                 }
             }
             // case when a new RAW must be generated from the hex byte array
             else {
-                try {
-                    input = new RAW(value).stringValue();
+                input = OracleRawCodec.toHexString(value);
 
-                    log.debug("GENERATED RAW {}", input);
-                } catch (Exception rawException) {
-                    log.error("Error in generating a RAW value - SchemaAndValue.NULL will be returned", rawException);
-                    return SchemaAndValue.NULL;
-                }
+                log.debug("GENERATED RAW {}", input);
             }
         } catch (Exception ex) {
             log.error("Generic Error - SchemaAndValue.NULL will be returned", ex);
-            return SchemaAndValue.NULL;
+            return null;
         }
 
-        return generateBsonDocument(input);
+        return input;
     }
 
     /*
      Oracle RAW byte [] size must be 16
      */
     public static byte[] convertToOracleRaw(UUID uuid) {
-        String uuidString = uuid.toString().replace("-", "").toUpperCase();
-        String finalValue = "";
-        finalValue += uuidString.substring(6, 8);
-        finalValue += uuidString.substring(4, 6);
-        finalValue += uuidString.substring(2, 4);
-        finalValue += uuidString.substring(0, 2);
-        finalValue += uuidString.substring(10, 12);
-        finalValue += uuidString.substring(8, 10);
-        finalValue += uuidString.substring(14, 16);
-        finalValue += uuidString.substring(12, 14);
-        finalValue += uuidString.substring(16, 18);
-
-        finalValue += uuidString.substring(18, uuidString.length());
-
-        try {
-            return Hex.decodeHex(finalValue);
-        } catch (DecoderException e) {
-            throw new RuntimeException(e);
-        }
-
+        return OracleRawCodec.uuidToRaw(uuid);
     }
 
     public static RAW oracleRawFromBase64(String base64) {
@@ -90,16 +113,50 @@ public class ConversionUtility {
     }
 
     private static SchemaAndValue generateBsonDocument(String input) {
-        try {
-            Document doc = new Document(KEY, input);
-            String json = doc.toJson();
+        String json = toIdJson(input);
 
-            log.debug("Bson document for json {}", json);
+        log.debug("Bson document for json {}", json);
 
-            return new SchemaAndValue(null, json);
-        } catch (Exception ex) {
-            log.error("Error in generating a Bson document - SchemaAndValue.NULL will be returned", ex);
-            return SchemaAndValue.NULL;
+        return new SchemaAndValue(null, json);
+    }
+
+    /*
+     Same output of new Document("_id", input).toJson(), written directly
+     */
+    public static String toIdJson(String input) {
+        StringBuilder json = new StringBuilder(input.length() + 12).append("{\"").append(KEY).append("\": \"");
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\b':
+                    json.append("\\b");
+                    break;
+                case '\f':
+                    json.append("\\f");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
         }
+        return json.append("\"}").toString();
     }
-}
\ No newline at end of file
+}
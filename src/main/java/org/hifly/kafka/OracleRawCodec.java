@@ -0,0 +1,190 @@
+package org.hifly.kafka;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Byte-level codec for Oracle RAW keys.
+ * Works directly on byte [] and reusable buffers: no regex, no intermediate strings and no Oracle driver.
+ */
+public final class OracleRawCodec {
+
+    public static final int RAW_UUID_SIZE = 16;
+
+    private static final byte[] HEX_DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    private static final byte[] HEXTORAW_PREFIX = "HEXTORAW('".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEXTORAW_PREFIX_NAME_LENGTH = 8;
+
+    private static final ThreadLocal<byte[]> HEX_BUFFER = ThreadLocal.withInitial(() -> new byte[RAW_UUID_SIZE * 2]);
+    // a buffer needed over this by a large value is not kept by the thread
+    private static final int MAX_RETAINED_CAPACITY = 1 << 12;
+
+    private OracleRawCodec() {
+    }
+
+    /*
+     Oracle stores a GUID with the first three groups in little-endian order:
+     bytes 0-3, 4-5 and 6-7 are swapped, bytes 8-15 are kept as they are.
+     */
+    public static byte[] uuidToRaw(UUID uuid) {
+        byte[] raw = new byte[RAW_UUID_SIZE];
+        uuidToRaw(uuid, raw, 0);
+        return raw;
+    }
+
+    public static void uuidToRaw(UUID uuid, byte[] dst, int offset) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+
+        dst[offset] = (byte) (msb >>> 32);
+        dst[offset + 1] = (byte) (msb >>> 40);
+        dst[offset + 2] = (byte) (msb >>> 48);
+        dst[offset + 3] = (byte) (msb >>> 56);
+        dst[offset + 4] = (byte) (msb >>> 16);
+        dst[offset + 5] = (byte) (msb >>> 24);
+        dst[offset + 6] = (byte) msb;
+        dst[offset + 7] = (byte) (msb >>> 8);
+
+        for (int i = 0; i < 8; i++) {
+            dst[offset + 8 + i] = (byte) (lsb >>> (56 - (i << 3)));
+        }
+    }
+
+    /*
+     Batch variant: count UUIDs packed as consecutive 16 byte RAW values into dst
+     */
+    public static int uuidsToRaw(UUID[] uuids, int offset, int count, byte[] dst, int dstOffset) {
+        int j = dstOffset;
+        for (int i = offset, end = offset + count; i < end; i++) {
+            uuidToRaw(uuids[i], dst, j);
+            j += RAW_UUID_SIZE;
+        }
+        return j - dstOffset;
+    }
+
+    /*
+     Upper case hex encoding, 2 output bytes for each input byte
+     */
+    public static int encodeHex(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+        int j = dstOffset;
+        for (int i = srcOffset, end = srcOffset + length; i < end; i++) {
+            int v = src[i] & 0xFF;
+            dst[j++] = HEX_DIGITS[v >>> 4];
+            dst[j++] = HEX_DIGITS[v & 0x0F];
+        }
+        return j - dstOffset;
+    }
+
+    public static int encodeHex(byte[] src, int srcOffset, int length, char[] dst, int dstOffset) {
+        int j = dstOffset;
+        for (int i = srcOffset, end = srcOffset + length; i < end; i++) {
+            int v = src[i] & 0xFF;
+            dst[j++] = (char) HEX_DIGITS[v >>> 4];
+            dst[j++] = (char) HEX_DIGITS[v & 0x0F];
+        }
+        return j - dstOffset;
+    }
+
+    public static String toHexString(byte[] src) {
+        return toHexString(src, 0, src.length);
+    }
+
+    public static String toHexString(byte[] src, int offset, int length) {
+        byte[] buffer = hexBuffer(length * 2);
+        int size = encodeHex(src, offset, length, buffer, 0);
+        return new String(buffer, 0, size, StandardCharsets.ISO_8859_1);
+    }
+
+    /*
+     Batch variant: hex values of count byte [] written into out, each one encoded in the reusable buffer
+     */
+    public static void toHexStrings(byte[][] values, int offset, int count, String[] out, int outOffset) {
+        for (int i = 0; i < count; i++) {
+            byte[] value = values[offset + i];
+            byte[] buffer = hexBuffer(value.length * 2);
+            int length = encodeHex(value, 0, value.length, buffer, 0);
+            out[outOffset + i] = new String(buffer, 0, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    public static boolean isHexToRaw(byte[] value) {
+        return isHexToRaw(value, 0, value.length);
+    }
+
+    public static boolean isHexToRaw(byte[] value, int offset, int length) {
+        if (length < HEXTORAW_PREFIX_NAME_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < HEXTORAW_PREFIX_NAME_LENGTH; i++) {
+            if (value[offset + i] != HEXTORAW_PREFIX[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     Extract the upper case content of HEXTORAW('...'), null if the value is not well formed
+     */
+    public static String parseHexToRaw(byte[] value) {
+        return parseHexToRaw(value, 0, value.length);
+    }
+
+    public static String parseHexToRaw(byte[] value, int offset, int length) {
+        int end = offset + length;
+        int start = offset + HEXTORAW_PREFIX.length;
+        if (length < HEXTORAW_PREFIX.length + 2) {
+            return null;
+        }
+        for (int i = 0; i < HEXTORAW_PREFIX.length; i++) {
+            if (value[offset + i] != HEXTORAW_PREFIX[i]) {
+                return null;
+            }
+        }
+
+        int quote = -1;
+        boolean ascii = true;
+        for (int i = start; i < end; i++) {
+            byte b = value[i];
+            if (b == '\'') {
+                quote = i;
+                break;
+            }
+            if (b < 0) {
+                ascii = false;
+            }
+        }
+        if (quote < 0 || quote + 1 >= end || value[quote + 1] != ')') {
+            return null;
+        }
+
+        int size = quote - start;
+        if (!ascii) {
+            return new String(value, start, size, StandardCharsets.UTF_8).toUpperCase(Locale.ROOT);
+        }
+
+        byte[] buffer = hexBuffer(size);
+        for (int i = 0; i < size; i++) {
+            byte b = value[start + i];
+            buffer[i] = (b >= 'a' && b <= 'z') ? (byte) (b - 32) : b;
+        }
+        return new String(buffer, 0, size, StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] hexBuffer(int size) {
+        byte[] buffer = HEX_BUFFER.get();
+        if (buffer.length >= size) {
+            return buffer;
+        }
+        if (size > MAX_RETAINED_CAPACITY) {
+            return new byte[size];
+        }
+        buffer = new byte[size];
+        HEX_BUFFER.set(buffer);
+        return buffer;
+    }
+}
@@ -1,20 +1,62 @@
 package org.hifly.kafka;
 
+import org.apache.kafka.common.config.AbstractConfig;
+import org.apache.kafka.common.config.ConfigDef;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.data.SchemaAndValue;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
 import org.apache.kafka.connect.errors.DataException;
 import org.apache.kafka.connect.storage.Converter;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.Map;
 
 public class OracleRawToBsonKeyConverter implements Converter {
 
+    public static final String OUTPUT_FORMAT_CONFIG = "output.format";
+
+    public static final String OUTPUT_FORMAT_JSON = "json";
+    public static final String OUTPUT_FORMAT_STRUCT = "struct";
+    public static final String OUTPUT_FORMAT_MAP = "map";
+    public static final String OUTPUT_FORMAT_BSON = "bson";
+
+    private static final String KEY = "_id";
+
+    public static final Schema KEY_SCHEMA = SchemaBuilder.struct()
+            .name("OracleRawKey")
+            .field(KEY, Schema.STRING_SCHEMA)
+            .build();
+
+    private static final ConfigDef CONFIG_DEF = new ConfigDef()
+            .define(
+                    OUTPUT_FORMAT_CONFIG,
+                    ConfigDef.Type.STRING,
+                    OUTPUT_FORMAT_JSON,
+                    ConfigDef.ValidString.in(OUTPUT_FORMAT_JSON, OUTPUT_FORMAT_STRUCT, OUTPUT_FORMAT_MAP, OUTPUT_FORMAT_BSON),
+                    ConfigDef.Importance.MEDIUM,
+                    "key output: 'json' (schemaless JSON string), 'struct' (Struct with _id field), "
+                            + "'map' (schemaless Map with _id) or 'bson' (BsonDocument with _id)");
+
     private static final Logger log = LoggerFactory.getLogger(OracleRawToBsonKeyConverter.class);
 
+    private String outputFormat = OUTPUT_FORMAT_JSON;
+
+    @Override
+    public ConfigDef config() {
+        return CONFIG_DEF;
+    }
+
     @Override
     public void configure(Map<String, ?> configs, boolean isKey) {
+        AbstractConfig config = new AbstractConfig(CONFIG_DEF, configs);
+        outputFormat = config.getString(OUTPUT_FORMAT_CONFIG);
+
+        log.debug("Key output format {}", outputFormat);
     }
 
     @Override
@@ -29,10 +71,29 @@ public class OracleRawToBsonKeyConverter implements Converter {
         }
 
         try {
-            return ConversionUtility.oracleRawToBson(value);
+            if (OUTPUT_FORMAT_JSON.equals(outputFormat)) {
+                return ConversionUtility.oracleRawToBson(value);
+            }
+
+            String hex = ConversionUtility.oracleRawToHex(value);
+            if (hex == null) {
+                return SchemaAndValue.NULL;
+            }
+            return toStructuredKey(hex);
         } catch (Exception e) {
             throw new DataException(e.getMessage());
         }
     }
 
-}
\ No newline at end of file
+    private SchemaAndValue toStructuredKey(String hex) {
+        switch (outputFormat) {
+            case OUTPUT_FORMAT_STRUCT:
+                return new SchemaAndValue(KEY_SCHEMA, new Struct(KEY_SCHEMA).put(KEY, hex));
+            case OUTPUT_FORMAT_MAP:
+                return new SchemaAndValue(null, Collections.singletonMap(KEY, hex));
+            default:
+                return new SchemaAndValue(null, new BsonDocument(KEY, new BsonString(hex)));
+        }
+    }
+
+}
@@ -0,0 +1,421 @@
+package org.hifly.kafka;
+
+import org.apache.kafka.connect.data.Date;
+import org.apache.kafka.connect.data.Decimal;
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.data.Time;
+import org.apache.kafka.connect.data.Timestamp;
+import org.apache.kafka.connect.errors.DataException;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes Struct, Map and List values as UTF-8 JSON.
+ * Each Schema is compiled once into a writer plan (cached), output goes into a reusable buffer.
+ * An instance is not thread safe: each converter owns its own writer.
+ */
+public class StructuredJsonWriter {
+
+    private static final int MAX_CACHED_PLANS = 64;
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    // a buffer grown over this by a large value is dropped after use
+    private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    private interface ValueWriter {
+        void write(Object value, StructuredJsonWriter out);
+    }
+
+    private static final ValueWriter DYNAMIC_WRITER = (value, out) -> out.writeDynamic(value);
+
+    private final Map<Schema, ValueWriter> plans = new LinkedHashMap<Schema, ValueWriter>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Schema, ValueWriter> eldest) {
+            return size() > MAX_CACHED_PLANS;
+        }
+    };
+
+    // most records share the same Schema instance: skip the map lookup (and the deep Schema hashCode)
+    private Schema lastSchema;
+    private ValueWriter lastPlan;
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int position;
+
+    public static boolean isStructured(Object value) {
+        return value instanceof Struct || value instanceof Map || value instanceof Collection;
+    }
+
+    private static boolean isStructured(Schema.Type type) {
+        return type == Schema.Type.STRUCT || type == Schema.Type.MAP || type == Schema.Type.ARRAY;
+    }
+
+    public byte[] write(Schema schema, Object value) {
+        position = 0;
+        if (schema != null && !isStructured(schema.type())) {
+            schema = null;
+        }
+        if (schema == null && value instanceof Struct) {
+            schema = ((Struct) value).schema();
+        }
+        try {
+            if (schema == null) {
+                writeDynamic(value);
+            } else {
+                plan(schema).write(value, this);
+            }
+            return Arrays.copyOf(buffer, position);
+        } finally {
+            if (buffer.length > MAX_RETAINED_CAPACITY) {
+                buffer = new byte[INITIAL_BUFFER_SIZE];
+            }
+        }
+    }
+
+    private ValueWriter plan(Schema schema) {
+        if (schema == lastSchema) {
+            return lastPlan;
+        }
+        ValueWriter plan = plans.get(schema);
+        if (plan == null) {
+            plan = compile(schema);
+            plans.put(schema, plan);
+        }
+        lastSchema = schema;
+        lastPlan = plan;
+        return plan;
+    }
+
+    private static ValueWriter compile(Schema schema) {
+        ValueWriter writer = compileNonNull(schema);
+        return (value, out) -> {
+            if (value == null) {
+                out.writeRaw(NULL);
+            } else {
+                writer.write(value, out);
+            }
+        };
+    }
+
+    private static ValueWriter compileNonNull(Schema schema) {
+        String logicalName = schema.name();
+        if (Decimal.LOGICAL_NAME.equals(logicalName)) {
+            return (value, out) -> out.writeAscii(((BigDecimal) value).toPlainString());
+        }
+        if (Date.LOGICAL_NAME.equals(logicalName)) {
+            return (value, out) -> out.writeLong(Date.fromLogical(schema, (java.util.Date) value));
+        }
+        if (Time.LOGICAL_NAME.equals(logicalName)) {
+            return (value, out) -> out.writeLong(Time.fromLogical(schema, (java.util.Date) value));
+        }
+        if (Timestamp.LOGICAL_NAME.equals(logicalName)) {
+            return (value, out) -> out.writeLong(Timestamp.fromLogical(schema, (java.util.Date) value));
+        }
+
+        switch (schema.type()) {
+            case INT8:
+            case INT16:
+            case INT32:
+            case INT64:
+                return (value, out) -> out.writeLong(((Number) value).longValue());
+            case FLOAT32:
+                return (value, out) -> out.writeFloat(((Number) value).floatValue());
+            case FLOAT64:
+                return (value, out) -> out.writeDouble(((Number) value).doubleValue());
+            case BOOLEAN:
+                return (value, out) -> out.writeRaw((Boolean) value ? TRUE : FALSE);
+            case STRING:
+                return (value, out) -> out.writeString(value.toString());
+            case BYTES:
+                return (value, out) -> out.writeBytes(value);
+            case ARRAY:
+                return compileArray(schema);
+            case MAP:
+                return compileMap(schema);
+            case STRUCT:
+                return compileStruct(schema);
+            default:
+                throw new DataException("Unsupported schema type " + schema.type());
+        }
+    }
+
+    private static ValueWriter compileStruct(Schema schema) {
+        List<Field> fields = schema.fields();
+        Field[] structFields = fields.toArray(new Field[0]);
+        byte[][] names = new byte[structFields.length][];
+        ValueWriter[] writers = new ValueWriter[structFields.length];
+        for (int i = 0; i < structFields.length; i++) {
+            StructuredJsonWriter name = new StructuredJsonWriter();
+            name.writeRaw(i == 0 ? (byte) '{' : (byte) ',');
+            name.writeString(structFields[i].name());
+            name.writeRaw((byte) ':');
+            names[i] = Arrays.copyOf(name.buffer, name.position);
+            writers[i] = compile(structFields[i].schema());
+        }
+
+        return (value, out) -> {
+            Struct struct = (Struct) value;
+            if (structFields.length == 0) {
+                out.writeRaw((byte) '{');
+            }
+            for (int i = 0; i < structFields.length; i++) {
+                out.writeRaw(names[i]);
+                writers[i].write(struct.get(structFields[i]), out);
+            }
+            out.writeRaw((byte) '}');
+        };
+    }
+
+    private static ValueWriter compileArray(Schema schema) {
+        ValueWriter elementWriter = compile(schema.valueSchema());
+        return (value, out) -> {
+            out.writeRaw((byte) '[');
+            boolean first = true;
+            for (Object element : (Collection<?>) value) {
+                if (!first) {
+                    out.writeRaw((byte) ',');
+                }
+                elementWriter.write(element, out);
+                first = false;
+            }
+            out.writeRaw((byte) ']');
+        };
+    }
+
+    private static ValueWriter compileMap(Schema schema) {
+        ValueWriter valueWriter = compile(schema.valueSchema());
+        if (schema.keySchema().type() == Schema.Type.STRING) {
+            return (value, out) -> out.writeObject((Map<?, ?>) value, valueWriter);
+        }
+
+        // non string keys: array of [key, value] pairs, as JsonConverter does
+        ValueWriter keyWriter = compile(schema.keySchema());
+        return (value, out) -> {
+            out.writeRaw((byte) '[');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    out.writeRaw((byte) ',');
+                }
+                out.writeRaw((byte) '[');
+                keyWriter.write(entry.getKey(), out);
+                out.writeRaw((byte) ',');
+                valueWriter.write(entry.getValue(), out);
+                out.writeRaw((byte) ']');
+                first = false;
+            }
+            out.writeRaw((byte) ']');
+        };
+    }
+
+    private void writeObject(Map<?, ?> map, ValueWriter valueWriter) {
+        writeRaw((byte) '{');
+        boolean first = true;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!first) {
+                writeRaw((byte) ',');
+            }
+            writeString(String.valueOf(entry.getKey()));
+            writeRaw((byte) ':');
+            valueWriter.write(entry.getValue(), this);
+            first = false;
+        }
+        writeRaw((byte) '}');
+    }
+
+    // schemaless values: type resolved for each value
+    private void writeDynamic(Object value) {
+        if (value == null) {
+            writeRaw(NULL);
+        } else if (value instanceof Struct) {
+            plan(((Struct) value).schema()).write(value, this);
+        } else if (value instanceof Map) {
+            writeObject((Map<?, ?>) value, DYNAMIC_WRITER);
+        } else if (value instanceof Collection) {
+            writeRaw((byte) '[');
+            boolean first = true;
+            for (Object element : (Collection<?>) value) {
+                if (!first) {
+                    writeRaw((byte) ',');
+                }
+                writeDynamic(element);
+                first = false;
+            }
+            writeRaw((byte) ']');
+        } else if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Boolean) {
+            writeRaw((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Float) {
+            writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof BigDecimal) {
+            writeAscii(((BigDecimal) value).toPlainString());
+        } else if (value instanceof Number) {
+            writeLong(((Number) value).longValue());
+        } else if (value instanceof java.util.Date) {
+            writeLong(((java.util.Date) value).getTime());
+        } else if (value instanceof byte[] || value instanceof ByteBuffer) {
+            writeBytes(value);
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    private void writeBytes(Object value) {
+        byte[] bytes;
+        if (value instanceof ByteBuffer) {
+            ByteBuffer byteBuffer = (ByteBuffer) value;
+            bytes = new byte[byteBuffer.remaining()];
+            byteBuffer.duplicate().get(bytes);
+        } else {
+            bytes = (byte[]) value;
+        }
+        writeRaw((byte) '"');
+        writeRaw(Base64.getEncoder().encode(bytes));
+        writeRaw((byte) '"');
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        position = end;
+    }
+
+    private void writeDouble(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writeString(Double.toString(value));
+        } else {
+            writeAscii(Double.toString(value));
+        }
+    }
+
+    private void writeFloat(float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            writeString(Float.toString(value));
+        } else {
+            writeAscii(Float.toString(value));
+        }
+    }
+
+    private void writeAscii(String value) {
+        int length = value.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            buffer[position++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void writeString(String value) {
+        int length = value.length();
+        // worst case: 6 bytes for each escaped char
+        ensureCapacity(length * 6 + 2);
+        byte[] out = buffer;
+        int p = position;
+        out[p++] = '"';
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    out[p++] = (byte) c;
+                } else {
+                    out[p++] = '\\';
+                    switch (c) {
+                        case '"':
+                            out[p++] = '"';
+                            break;
+                        case '\\':
+                            out[p++] = '\\';
+                            break;
+                        case '\n':
+                            out[p++] = 'n';
+                            break;
+                        case '\r':
+                            out[p++] = 'r';
+                            break;
+                        case '\t':
+                            out[p++] = 't';
+                            break;
+                        case '\b':
+                            out[p++] = 'b';
+                            break;
+                        case '\f':
+                            out[p++] = 'f';
+                            break;
+                        default:
+                            out[p++] = 'u';
+                            out[p++] = '0';
+                            out[p++] = '0';
+                            out[p++] = HEX[c >>> 4];
+                            out[p++] = HEX[c & 0x0F];
+                    }
+                }
+            } else if (c < 0x800) {
+                out[p++] = (byte) (0xC0 | (c >> 6));
+                out[p++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out[p++] = (byte) (0xF0 | (codePoint >> 18));
+                out[p++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                out[p++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                out[p++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                out[p++] = '?';
+            } else {
+                out[p++] = (byte) (0xE0 | (c >> 12));
+                out[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[p++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        out[p++] = '"';
+        position = p;
+    }
+
+    private void writeRaw(byte value) {
+        ensureCapacity(1);
+        buffer[position++] = value;
+    }
+
+    private void writeRaw(byte[] value) {
+        ensureCapacity(value.length);
+        System.arraycopy(value, 0, buffer, position, value.length);
+        position += value.length;
+    }
+
+    private void ensureCapacity(int size) {
+        if (position + size > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + size));
+        }
+    }
+
+}
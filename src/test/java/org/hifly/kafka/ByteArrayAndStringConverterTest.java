@@ -7,6 +7,13 @@ import org.apache.kafka.connect.data.Struct;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class ByteArrayAndStringConverterTest {
 
     private final ByteArrayAndStringConverter converter = new ByteArrayAndStringConverter();
@@ -63,6 +70,118 @@ public class ByteArrayAndStringConverterTest {
         Assert.assertArrayEquals(struct.toString().getBytes(), result);
     }
 
+    @Test
+    public void testFromConnectDataWithConfiguredCharset() {
+        ByteArrayAndStringConverter latin1Converter = new ByteArrayAndStringConverter();
+        latin1Converter.configure(
+                Collections.singletonMap(ByteArrayAndStringConverterConfig.CHARSET_CONFIG, "ISO-8859-1"), false);
+
+        String testString = "caf\u00e9";
+        byte[] bytes = latin1Converter.fromConnectData("test-topic", Schema.STRING_SCHEMA, testString);
+
+        Assert.assertArrayEquals(testString.getBytes(StandardCharsets.ISO_8859_1), bytes);
+        Assert.assertArrayEquals(new StringBuilder(testString).toString().getBytes(StandardCharsets.ISO_8859_1),
+                latin1Converter.fromConnectData("test-topic", null, new StringBuilder(testString)));
+    }
+
+    @Test
+    public void testFromConnectDataDefaultsToUtf8() {
+        String testString = "caf\u00e9";
+        byte[] bytes = converter.fromConnectData("test-topic", Schema.STRING_SCHEMA, testString);
+
+        Assert.assertArrayEquals(testString.getBytes(StandardCharsets.UTF_8), bytes);
+    }
+
+    @Test
+    public void testFromConnectDataWithWholeByteBufferIsZeroCopy() {
+        byte[] testBytes = new byte[] {0x01, 0x02, 0x03};
+        byte[] result = converter.fromConnectData("test-topic", Schema.BYTES_SCHEMA, ByteBuffer.wrap(testBytes));
+
+        Assert.assertSame(testBytes, result);
+    }
+
+    @Test
+    public void testFromConnectDataWithByteBufferSlice() {
+        byte[] testBytes = new byte[] {0x01, 0x02, 0x03, 0x04};
+        ByteBuffer buffer = ByteBuffer.wrap(testBytes, 1, 2);
+        byte[] result = converter.fromConnectData("test-topic", Schema.BYTES_SCHEMA, buffer);
+
+        Assert.assertArrayEquals(new byte[] {0x02, 0x03}, result);
+        Assert.assertEquals(1, buffer.position());
+    }
+
+    @Test
+    public void testFromConnectDataWithStructValueAsJson() {
+        ByteArrayAndStringConverter jsonConverter = jsonConverter();
+
+        Schema structSchema = SchemaBuilder.struct().name("TestStruct")
+                .field("f1", Schema.STRING_SCHEMA)
+                .field("f2", Schema.OPTIONAL_INT64_SCHEMA)
+                .field("f3", SchemaBuilder.array(Schema.STRING_SCHEMA).build())
+                .build();
+        Struct struct = new Struct(structSchema)
+                .put("f1", "v\"1")
+                .put("f3", Arrays.asList("a", "b"));
+
+        byte[] result = jsonConverter.fromConnectData("struct-topic", structSchema, struct);
+
+        Assert.assertEquals("{\"f1\":\"v\\\"1\",\"f2\":null,\"f3\":[\"a\",\"b\"]}",
+                new String(result, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFromConnectDataWithSchemalessMapAsJson() {
+        ByteArrayAndStringConverter jsonConverter = jsonConverter();
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", 1);
+        map.put("tags", Arrays.asList("x", true, 2.5));
+
+        byte[] result = jsonConverter.fromConnectData("map-topic", null, map);
+
+        Assert.assertEquals("{\"id\":1,\"tags\":[\"x\",true,2.5]}", new String(result, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testLargeStringThenSmallOne() {
+        // needs an encode buffer over the size kept by the converter
+        char[] chars = new char[1 << 20];
+        Arrays.fill(chars, '\u00e8');
+        String large = new String(chars);
+
+        Assert.assertArrayEquals(large.getBytes(StandardCharsets.UTF_8),
+                converter.fromConnectData("test-topic", Schema.STRING_SCHEMA, large));
+        Assert.assertArrayEquals("small".getBytes(StandardCharsets.UTF_8),
+                converter.fromConnectData("test-topic", Schema.STRING_SCHEMA, "small"));
+    }
+
+    @Test
+    public void testLargeMapAsJsonThenSmallOne() {
+        ByteArrayAndStringConverter jsonConverter = jsonConverter();
+
+        // over the buffer kept by the writer
+        char[] chars = new char[2 << 20];
+        Arrays.fill(chars, 'x');
+        String large = new String(chars);
+        byte[] result = jsonConverter.fromConnectData("map-topic", null, Collections.singletonMap("v", large));
+        Assert.assertEquals("{\"v\":\"" + large + "\"}", new String(result, StandardCharsets.UTF_8));
+
+        result = jsonConverter.fromConnectData("map-topic", null, Collections.singletonMap("v", "small"));
+        Assert.assertEquals("{\"v\":\"small\"}", new String(result, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFromConnectHeaderWithStructValueAsJson() {
+        ByteArrayAndStringConverter jsonConverter = jsonConverter();
+
+        Schema structSchema = SchemaBuilder.struct().field("f1", Schema.STRING_SCHEMA).build();
+        Struct struct = new Struct(structSchema).put("f1", "v1");
+
+        byte[] result = jsonConverter.fromConnectHeader("topic", "headerKey", structSchema, struct);
+
+        Assert.assertEquals("{\"f1\":\"v1\"}", new String(result, StandardCharsets.UTF_8));
+    }
+
     @Test
     public void testToConnectData() {
         byte[] testBytes = new byte[] {0x11, 0x12};
@@ -90,4 +209,12 @@ public class ByteArrayAndStringConverterTest {
         Assert.assertEquals(Schema.OPTIONAL_BYTES_SCHEMA, result.schema());
         Assert.assertArrayEquals(testBytes, (byte[]) result.value());
     }
-}
\ No newline at end of file
+
+    private static ByteArrayAndStringConverter jsonConverter() {
+        ByteArrayAndStringConverter jsonConverter = new ByteArrayAndStringConverter();
+        jsonConverter.configure(Collections.singletonMap(
+                ByteArrayAndStringConverterConfig.STRUCTURED_FORMAT_CONFIG,
+                ByteArrayAndStringConverterConfig.STRUCTURED_FORMAT_JSON), false);
+        return jsonConverter;
+    }
+}
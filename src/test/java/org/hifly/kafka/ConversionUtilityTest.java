@@ -48,6 +48,25 @@ public class ConversionUtilityTest {
 
     }
 
+    @Test
+    public void testOracleRawToBsonBatch () {
+        byte [][] keys = new byte[][] {
+                ConversionUtility.convertToOracleRaw(UUID.randomUUID()),
+                "HEXTORAW('ab12cd')".getBytes(),
+                new byte[RAW_BYTE_SIZE],
+                "HEXTORAW('ab12cd'".getBytes()
+        };
+        SchemaAndValue[] results = new SchemaAndValue[keys.length];
+
+        ConversionUtility.oracleRawToBson(keys, keys.length, results);
+
+        for (int i = 0; i < keys.length; i++) {
+            Assert.assertEquals(ConversionUtility.oracleRawToBson(keys[i]).value(), results[i].value());
+        }
+        Assert.assertEquals("AB12CD", new JSONObject(commonValidators(results[1])).get(KEY));
+        Assert.assertEquals(SchemaAndValue.NULL, results[3]);
+    }
+
     private static String commonValidators(SchemaAndValue result) {
         Assert.assertNotNull(result);
         Assert.assertNotNull(result.value());
@@ -0,0 +1,61 @@
+package org.hifly.kafka;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.UUID;
+
+public class OracleRawCodecTest {
+
+    @Test
+    public void testUuidToRawSwapsFirstThreeGroups() {
+        UUID uuid = UUID.fromString("00112233-4455-6677-8899-aabbccddeeff");
+        byte[] raw = OracleRawCodec.uuidToRaw(uuid);
+
+        Assert.assertEquals(OracleRawCodec.RAW_UUID_SIZE, raw.length);
+        Assert.assertEquals("33221100554477668899AABBCCDDEEFF", OracleRawCodec.toHexString(raw));
+    }
+
+    @Test
+    public void testEncodeHexIntoBuffer() {
+        byte[] src = new byte[] {0x00, 0x7F, (byte) 0x80, (byte) 0xFF};
+        char[] dst = new char[10];
+
+        int size = OracleRawCodec.encodeHex(src, 0, src.length, dst, 2);
+
+        Assert.assertEquals(8, size);
+        Assert.assertEquals("007F80FF", new String(dst, 2, size));
+    }
+
+    @Test
+    public void testToHexStrings() {
+        // a value larger than the buffer kept by the thread, then small ones again
+        byte[] large = new byte[10_000];
+        large[large.length - 1] = (byte) 0xAB;
+        byte[][] values = new byte[][] {{0x01, 0x02}, large, {}, {(byte) 0xFF}};
+        String[] out = new String[values.length + 1];
+
+        OracleRawCodec.toHexStrings(values, 0, values.length, out, 1);
+
+        Assert.assertNull(out[0]);
+        Assert.assertEquals("0102", out[1]);
+        Assert.assertEquals(20_000, out[2].length());
+        Assert.assertTrue(out[2].endsWith("00AB"));
+        Assert.assertEquals("", out[3]);
+        Assert.assertEquals("FF", out[4]);
+        Assert.assertEquals("0102", OracleRawCodec.toHexString(values[0]));
+    }
+
+    @Test
+    public void testParseHexToRaw() {
+        Assert.assertTrue(OracleRawCodec.isHexToRaw("HEXTORAW('ab12cd')".getBytes()));
+        Assert.assertEquals("AB12CD", OracleRawCodec.parseHexToRaw("HEXTORAW('ab12cd')".getBytes()));
+    }
+
+    @Test
+    public void testParseMalformedHexToRaw() {
+        Assert.assertFalse(OracleRawCodec.isHexToRaw("HEX".getBytes()));
+        Assert.assertNull(OracleRawCodec.parseHexToRaw("HEXTORAW('ab12cd'".getBytes()));
+        Assert.assertNull(OracleRawCodec.parseHexToRaw("HEXTORAW(ab12cd)".getBytes()));
+    }
+}
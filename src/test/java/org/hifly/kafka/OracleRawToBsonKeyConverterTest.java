@@ -0,0 +1,63 @@
+package org.hifly.kafka;
+
+import org.apache.kafka.connect.data.SchemaAndValue;
+import org.apache.kafka.connect.data.Struct;
+import org.bson.BsonDocument;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class OracleRawToBsonKeyConverterTest {
+
+    private static final String KEY = "_id";
+    private static final String RAW_DEFAULT_VALUE = "00000000000000000000000000000000";
+    private static final int RAW_BYTE_SIZE = 16;
+
+    @Test
+    public void testDefaultJsonOutput() {
+        OracleRawToBsonKeyConverter converter = converter(OracleRawToBsonKeyConverter.OUTPUT_FORMAT_JSON);
+
+        SchemaAndValue result = converter.toConnectData("topic", new byte[RAW_BYTE_SIZE]);
+
+        Assert.assertNull(result.schema());
+        Assert.assertEquals("{\"_id\": \"" + RAW_DEFAULT_VALUE + "\"}", result.value());
+    }
+
+    @Test
+    public void testStructOutput() {
+        OracleRawToBsonKeyConverter converter = converter(OracleRawToBsonKeyConverter.OUTPUT_FORMAT_STRUCT);
+
+        SchemaAndValue result = converter.toConnectData("topic", new byte[RAW_BYTE_SIZE]);
+
+        Assert.assertEquals(OracleRawToBsonKeyConverter.KEY_SCHEMA, result.schema());
+        Assert.assertEquals(RAW_DEFAULT_VALUE, ((Struct) result.value()).getString(KEY));
+    }
+
+    @Test
+    public void testMapOutput() {
+        OracleRawToBsonKeyConverter converter = converter(OracleRawToBsonKeyConverter.OUTPUT_FORMAT_MAP);
+
+        SchemaAndValue result = converter.toConnectData("topic", "HEXTORAW('ab12')".getBytes());
+
+        Assert.assertNull(result.schema());
+        Assert.assertEquals("AB12", ((Map<?, ?>) result.value()).get(KEY));
+    }
+
+    @Test
+    public void testBsonOutput() {
+        OracleRawToBsonKeyConverter converter = converter(OracleRawToBsonKeyConverter.OUTPUT_FORMAT_BSON);
+
+        SchemaAndValue result = converter.toConnectData("topic", new byte[RAW_BYTE_SIZE]);
+
+        Assert.assertEquals(RAW_DEFAULT_VALUE, ((BsonDocument) result.value()).getString(KEY).getValue());
+    }
+
+    private static OracleRawToBsonKeyConverter converter(String outputFormat) {
+        OracleRawToBsonKeyConverter converter = new OracleRawToBsonKeyConverter();
+        converter.configure(
+                Collections.singletonMap(OracleRawToBsonKeyConverter.OUTPUT_FORMAT_CONFIG, outputFormat), true);
+        return converter;
+    }
+}